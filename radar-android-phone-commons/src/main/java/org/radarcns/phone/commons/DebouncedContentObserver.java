@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.commons;
+
+import android.content.ContentResolver;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content observer that runs an action once content has stopped changing for a given delay.
+ * A burst of change notifications is coalesced into a single run of the action. The number of
+ * notifications and of actions run are counted, to show how many runs were avoided.
+ */
+public class DebouncedContentObserver extends ContentObserver {
+    private final Handler handler;
+    private final Runnable action;
+    private final long delayMillis;
+    private boolean isRegistered;
+    private int changeCount;
+    private int actionCount;
+
+    /**
+     * Create an observer.
+     * @param handler handler to receive notifications and to run the action on
+     * @param delay time without changes after which to run the action
+     * @param unit unit of the delay
+     * @param action action to run
+     */
+    public DebouncedContentObserver(@NonNull Handler handler, long delay, @NonNull TimeUnit unit,
+            @NonNull Runnable action) {
+        super(handler);
+        this.handler = handler;
+        this.action = () -> {
+            synchronized (this) {
+                actionCount++;
+            }
+            action.run();
+        };
+        this.delayMillis = unit.toMillis(delay);
+        this.isRegistered = false;
+    }
+
+    @Override
+    public void onChange(boolean selfChange) {
+        synchronized (this) {
+            changeCount++;
+        }
+        handler.removeCallbacks(action);
+        handler.postDelayed(action, delayMillis);
+    }
+
+    /** Start observing given content URIs and their descendants. */
+    public synchronized void register(@NonNull ContentResolver resolver, @NonNull Uri... uris) {
+        if (isRegistered) {
+            return;
+        }
+        for (Uri uri : uris) {
+            resolver.registerContentObserver(uri, true, this);
+        }
+        isRegistered = true;
+    }
+
+    /** Stop observing content and cancel any pending action. */
+    public synchronized void unregister(@NonNull ContentResolver resolver) {
+        if (!isRegistered) {
+            return;
+        }
+        resolver.unregisterContentObserver(this);
+        handler.removeCallbacks(action);
+        isRegistered = false;
+    }
+
+    /** Number of change notifications received. */
+    public synchronized int getChangeCount() {
+        return changeCount;
+    }
+
+    /** Number of times the action was run. */
+    public synchronized int getActionCount() {
+        return actionCount;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.provider.CallLog;
+import android.provider.Telephony;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the cursor readers with reading every column by name and materializing strings, as
+ * the log processor did before, over 100k rows of fake call and SMS logs. Rows are stored in a
+ * CursorWindow, like the rows of a content provider query.
+ */
+@RunWith(AndroidJUnit4.class)
+public class CursorReaderBenchmark {
+    private static final String TAG = "CursorReaderBenchmark";
+    private static final int ROWS_PER_WINDOW = 5_000;
+    private static final int PASSES = 20;
+
+    @Test
+    public void smsLog() {
+        try (Cursor cursor = createSmsCursor()) {
+            // warm up both paths
+            long checksum = readSmsLegacy(cursor) + readSms(cursor, new SmsLogReader());
+
+            long start = System.nanoTime();
+            long legacySum = 0L;
+            for (int i = 0; i < PASSES; i++) {
+                legacySum += readSmsLegacy(cursor);
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long readerSum = 0L;
+            SmsLogReader reader = new SmsLogReader();
+            for (int i = 0; i < PASSES; i++) {
+                readerSum += readSms(cursor, reader);
+            }
+            long readerNanos = System.nanoTime() - start;
+
+            assertEquals(legacySum, readerSum);
+            report("SMS", legacyNanos, readerNanos, checksum);
+        }
+    }
+
+    @Test
+    public void callLog() {
+        try (Cursor cursor = createCallCursor()) {
+            long checksum = readCallsLegacy(cursor) + readCalls(cursor, new CallLogReader());
+
+            long start = System.nanoTime();
+            long legacySum = 0L;
+            for (int i = 0; i < PASSES; i++) {
+                legacySum += readCallsLegacy(cursor);
+            }
+            long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            long readerSum = 0L;
+            CallLogReader reader = new CallLogReader();
+            for (int i = 0; i < PASSES; i++) {
+                readerSum += readCalls(cursor, reader);
+            }
+            long readerNanos = System.nanoTime() - start;
+
+            assertEquals(legacySum, readerSum);
+            report("Call", legacyNanos, readerNanos, checksum);
+        }
+    }
+
+    private static void report(String log, long legacyNanos, long readerNanos, long checksum) {
+        int rows = ROWS_PER_WINDOW * PASSES;
+        Log.i(TAG, String.format("%s log, %d rows: by column name %.1f ns/row, reader %.1f ns/row (%d)",
+                log, rows, legacyNanos / (double) rows, readerNanos / (double) rows, checksum));
+    }
+
+    private static long readSmsLegacy(Cursor cursor) {
+        long sum = 0L;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            long date = cursor.getLong(cursor.getColumnIndex(Telephony.Sms.DATE));
+            boolean isContact = cursor.getInt(cursor.getColumnIndex(Telephony.Sms.PERSON)) > 0;
+            String address = cursor.getString(cursor.getColumnIndex(Telephony.Sms.ADDRESS));
+            int type = cursor.getInt(cursor.getColumnIndex(Telephony.Sms.TYPE));
+            String body = cursor.getString(cursor.getColumnIndex(Telephony.Sms.BODY));
+            sum += date + (isContact ? 1 : 0) + address.length() + type
+                    + (body != null ? body.length() : 0);
+        }
+        return sum;
+    }
+
+    private static long readSms(Cursor cursor, SmsLogReader reader) {
+        long sum = 0L;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            reader.read(cursor);
+            sum += reader.date + (reader.isContact ? 1 : 0) + reader.address.length()
+                    + reader.type + reader.bodyLength;
+        }
+        return sum;
+    }
+
+    private static long readCallsLegacy(Cursor cursor) {
+        long sum = 0L;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            long date = cursor.getLong(cursor.getColumnIndex(CallLog.Calls.DATE));
+            boolean isContact = cursor.getString(
+                    cursor.getColumnIndex(CallLog.Calls.CACHED_LOOKUP_URI)) != null;
+            String number = cursor.getString(cursor.getColumnIndex(CallLog.Calls.NUMBER));
+            float duration = cursor.getFloat(cursor.getColumnIndex(CallLog.Calls.DURATION));
+            int type = cursor.getInt(cursor.getColumnIndex(CallLog.Calls.TYPE));
+            sum += date + (isContact ? 1 : 0) + number.length() + (long) duration + type;
+        }
+        return sum;
+    }
+
+    private static long readCalls(Cursor cursor, CallLogReader reader) {
+        long sum = 0L;
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            reader.read(cursor);
+            sum += reader.date + (reader.isContact ? 1 : 0) + reader.number.length()
+                    + (long) reader.duration + reader.type;
+        }
+        return sum;
+    }
+
+    private static Cursor createSmsCursor() {
+        Random random = new Random(42L);
+        CursorWindow window = new CursorWindow(TAG);
+        window.setNumColumns(SmsLogReader.COLUMNS.length);
+        StringBuilder body = new StringBuilder();
+        for (int row = 0; row < ROWS_PER_WINDOW; row++) {
+            assertTrue("Cursor window full", window.allocRow());
+            window.putLong(row, row, 0);
+            window.putLong(1_500_000_000_000L + row * 60_000L, row, 1);
+            window.putLong(random.nextInt(3), row, 2);
+            window.putString("+316" + (10_000_000 + random.nextInt(90_000_000)), row, 3);
+            window.putLong(1 + random.nextInt(2), row, 4);
+            body.setLength(0);
+            int length = random.nextInt(160);
+            for (int i = 0; i < length; i++) {
+                body.append((char) ('a' + random.nextInt(26)));
+            }
+            window.putString(body.toString(), row, 5);
+        }
+        return new WindowCursor(SmsLogReader.COLUMNS, window);
+    }
+
+    private static Cursor createCallCursor() {
+        Random random = new Random(42L);
+        CursorWindow window = new CursorWindow(TAG);
+        window.setNumColumns(CallLogReader.COLUMNS.length);
+        for (int row = 0; row < ROWS_PER_WINDOW; row++) {
+            assertTrue("Cursor window full", window.allocRow());
+            window.putLong(row, row, 0);
+            window.putLong(1_500_000_000_000L + row * 60_000L, row, 1);
+            if (random.nextBoolean()) {
+                window.putString("content://com.android.contacts/contacts/lookup/" + row, row, 2);
+            } else {
+                window.putNull(row, 2);
+            }
+            window.putString("+316" + (10_000_000 + random.nextInt(90_000_000)), row, 3);
+            window.putLong(random.nextInt(3600), row, 4);
+            window.putLong(1 + random.nextInt(3), row, 5);
+        }
+        return new WindowCursor(CallLogReader.COLUMNS, window);
+    }
+
+    /** Cursor over a single filled window. */
+    private static class WindowCursor extends AbstractWindowedCursor {
+        private final String[] columns;
+
+        WindowCursor(String[] columns, CursorWindow window) {
+            this.columns = columns;
+            setWindow(window);
+        }
+
+        @Override
+        public int getCount() {
+            return mWindow.getNumRows();
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return columns;
+        }
+    }
+}
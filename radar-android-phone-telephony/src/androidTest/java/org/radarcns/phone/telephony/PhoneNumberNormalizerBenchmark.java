@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the phone number scanner with the regular expression that it replaced, on a mix of
+ * clean numbers and names. Formatted numbers are left out, because the old path does not handle
+ * them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneNumberNormalizerBenchmark {
+    private static final String TAG = "PhoneNumberBenchmark";
+    /** Pattern that was used to detect phone numbers before the scanner. */
+    private static final Pattern IS_NUMBER = Pattern.compile("^[+-]?\\d+$");
+    private static final int BENCHMARK_TARGETS = 1000;
+    private static final int BENCHMARK_ROUNDS = 2000;
+
+    /** Result of the regular expression based implementation that the scanner replaces. */
+    private static int legacySuffix(String target) {
+        if (!IS_NUMBER.matcher(target).matches()) {
+            return PhoneNumberNormalizer.NOT_A_NUMBER;
+        }
+        long phoneNumber = Long.parseLong(target);
+        if (phoneNumber < 0) {
+            return PhoneNumberNormalizer.ANONYMOUS;
+        }
+        return (int) (phoneNumber % 1_000_000_000L);
+    }
+
+    @Test
+    public void significantSuffix() {
+        Random random = new Random(42L);
+        String[] targets = new String[BENCHMARK_TARGETS];
+        for (int i = 0; i < targets.length; i++) {
+            switch (i % 3) {
+                case 0:
+                    targets[i] = String.format(Locale.US, "+316%08d", random.nextInt(100_000_000));
+                    break;
+                case 1:
+                    targets[i] = String.format(Locale.US, "06%08d", random.nextInt(100_000_000));
+                    break;
+                default:
+                    targets[i] = "Sender" + random.nextInt(100);
+                    break;
+            }
+        }
+
+        // warm up both paths
+        long checksum = run(targets, false, BENCHMARK_ROUNDS / 4)
+                + run(targets, true, BENCHMARK_ROUNDS / 4);
+
+        long start = System.nanoTime();
+        long scannerSum = run(targets, false, BENCHMARK_ROUNDS);
+        long scannerNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long legacySum = run(targets, true, BENCHMARK_ROUNDS);
+        long legacyNanos = System.nanoTime() - start;
+
+        assertEquals(legacySum, scannerSum);
+
+        int calls = BENCHMARK_TARGETS * BENCHMARK_ROUNDS;
+        Log.i(TAG, String.format(Locale.US,
+                "Phone number normalization: scanner %.1f ns/target, regex %.1f ns/target (%d)",
+                scannerNanos / (double) calls, legacyNanos / (double) calls, checksum));
+    }
+
+    private static long run(String[] targets, boolean useLegacy, int rounds) {
+        long sum = 0L;
+        for (int round = 0; round < rounds; round++) {
+            for (String target : targets) {
+                sum += useLegacy
+                        ? legacySuffix(target)
+                        : PhoneNumberNormalizer.significantSuffix(target);
+            }
+        }
+        return sum;
+    }
+}
@@ -40,6 +40,15 @@ public class PhoneLogProvider extends DeviceServiceProvider<BaseDeviceState> {
     private static final String CALL_SMS_LOG_INTERVAL = "call_sms_log_interval_seconds";
     public static final String CALL_SMS_LOG_INTERVAL_KEY = PREFIX + CALL_SMS_LOG_INTERVAL;
     private static final long CALL_SMS_LOG_INTERVAL_DEFAULT = 24 * 60 * 60; // seconds
+    private static final String CALL_SMS_LOG_OBSERVER_DELAY = "call_sms_log_observer_delay_seconds";
+    public static final String CALL_SMS_LOG_OBSERVER_DELAY_KEY = PREFIX + CALL_SMS_LOG_OBSERVER_DELAY;
+    private static final long CALL_SMS_LOG_OBSERVER_DELAY_DEFAULT = -1L; // disabled
+    private static final String CALL_SMS_LOG_BACKFILL_DAYS = "call_sms_log_backfill_days";
+    public static final String CALL_SMS_LOG_BACKFILL_DAYS_KEY = PREFIX + CALL_SMS_LOG_BACKFILL_DAYS;
+    private static final long CALL_SMS_LOG_BACKFILL_DAYS_DEFAULT = 0L; // disabled
+    private static final String CALL_SMS_LOG_BACKFILL_PAGES = "call_sms_log_backfill_pages_per_run";
+    public static final String CALL_SMS_LOG_BACKFILL_PAGES_KEY = PREFIX + CALL_SMS_LOG_BACKFILL_PAGES;
+    private static final int CALL_SMS_LOG_BACKFILL_PAGES_DEFAULT = 1;
 
     @Override
     public Class<?> getServiceClass() {
@@ -61,6 +70,9 @@ public class PhoneLogProvider extends DeviceServiceProvider<BaseDeviceState> {
         super.configure(bundle);
         RadarConfiguration config = getConfig();
         bundle.putLong(CALL_SMS_LOG_INTERVAL_KEY, config.getLong(CALL_SMS_LOG_INTERVAL, CALL_SMS_LOG_INTERVAL_DEFAULT));
+        bundle.putLong(CALL_SMS_LOG_OBSERVER_DELAY_KEY, config.getLong(CALL_SMS_LOG_OBSERVER_DELAY, CALL_SMS_LOG_OBSERVER_DELAY_DEFAULT));
+        bundle.putLong(CALL_SMS_LOG_BACKFILL_DAYS_KEY, config.getLong(CALL_SMS_LOG_BACKFILL_DAYS, CALL_SMS_LOG_BACKFILL_DAYS_DEFAULT));
+        bundle.putInt(CALL_SMS_LOG_BACKFILL_PAGES_KEY, config.getInt(CALL_SMS_LOG_BACKFILL_PAGES, CALL_SMS_LOG_BACKFILL_PAGES_DEFAULT));
     }
 
     @NonNull
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import android.provider.CallLog;
+import android.support.annotation.NonNull;
+
+/** Reads call log rows. */
+class CallLogReader extends CursorReader {
+    /** Columns that should be present in the cursor. */
+    static final String[] COLUMNS = {
+            BaseColumns._ID, CallLog.Calls.DATE, CallLog.Calls.CACHED_LOOKUP_URI,
+            CallLog.Calls.NUMBER, CallLog.Calls.DURATION, CallLog.Calls.TYPE};
+
+    private int dateIndex;
+    private int lookupUriIndex;
+    private int numberIndex;
+    private int durationIndex;
+    private int typeIndex;
+
+    /** Date of the call in milliseconds since the epoch. */
+    long date;
+    /** Whether the other party is a contact. */
+    boolean isContact;
+    /** Phone number of the other party. */
+    String number;
+    /** Duration of the call in seconds. */
+    float duration;
+    /** Call type code. */
+    int type;
+
+    @Override
+    protected void bind(@NonNull Cursor cursor) {
+        dateIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.DATE);
+        lookupUriIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.CACHED_LOOKUP_URI);
+        numberIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.NUMBER);
+        durationIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.DURATION);
+        typeIndex = cursor.getColumnIndexOrThrow(CallLog.Calls.TYPE);
+    }
+
+    @Override
+    protected void readRow(@NonNull Cursor cursor) {
+        date = cursor.getLong(dateIndex);
+        // If contact, then the contact lookup uri is given
+        isContact = !cursor.isNull(lookupUriIndex);
+        number = cursor.getString(numberIndex);
+        duration = cursor.getFloat(durationIndex);
+        type = cursor.getInt(typeIndex);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+/**
+ * Reads cursor rows into reusable fields. Column indices are resolved only once per cursor,
+ * instead of once per row. Subclasses are not thread-safe.
+ */
+abstract class CursorReader {
+    private Cursor boundCursor;
+
+    /**
+     * Read the current row of given cursor into this reader.
+     * @throws IllegalArgumentException if the cursor does not contain a required column.
+     */
+    final void read(@NonNull Cursor cursor) {
+        if (cursor != boundCursor) {
+            bind(cursor);
+            boundCursor = cursor;
+        }
+        readRow(cursor);
+    }
+
+    /**
+     * Resolve the column indices of a new cursor.
+     * @throws IllegalArgumentException if the cursor does not contain a required column.
+     */
+    protected abstract void bind(@NonNull Cursor cursor);
+
+    /** Read the current row, using the column indices of the last bound cursor. */
+    protected abstract void readRow(@NonNull Cursor cursor);
+}
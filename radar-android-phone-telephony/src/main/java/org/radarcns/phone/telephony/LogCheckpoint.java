@@ -0,0 +1,67 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+/**
+ * Persisted position in a content log, as the date and row ID of the last processed record.
+ * Records are ordered by date and then by ID, so records with the same date are not skipped.
+ */
+class LogCheckpoint {
+    private final SharedPreferences preferences;
+    private final String timestampKey;
+    private final String idKey;
+    private long timestamp;
+    private long id;
+
+    /**
+     * Load a checkpoint from shared preferences.
+     * @param preferences preferences to store the checkpoint in
+     * @param timestampKey preference key of the date
+     * @param idKey preference key of the row ID
+     * @param defaultTimestamp date to start from if no checkpoint was stored
+     */
+    LogCheckpoint(@NonNull SharedPreferences preferences, @NonNull String timestampKey,
+            @NonNull String idKey, long defaultTimestamp) {
+        this.preferences = preferences;
+        this.timestampKey = timestampKey;
+        this.idKey = idKey;
+        this.timestamp = preferences.getLong(timestampKey, defaultTimestamp);
+        // Older checkpoints only stored the date, after processing all records with that date.
+        this.id = preferences.getLong(idKey, Long.MAX_VALUE);
+    }
+
+    synchronized long getTimestamp() {
+        return timestamp;
+    }
+
+    synchronized long getId() {
+        return id;
+    }
+
+    /** Update the checkpoint and write it to storage before returning. */
+    synchronized void update(long timestamp, long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+        preferences.edit()
+                .putLong(timestampKey, timestamp)
+                .putLong(idKey, id)
+                .commit();
+    }
+}
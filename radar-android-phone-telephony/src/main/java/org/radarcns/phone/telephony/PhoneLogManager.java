@@ -19,8 +19,12 @@ package org.radarcns.phone.telephony;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.CallLog;
 import android.provider.Telephony;
 import android.support.annotation.NonNull;
@@ -37,15 +41,18 @@ import org.radarcns.passive.phone.PhoneCallType;
 import org.radarcns.passive.phone.PhoneSms;
 import org.radarcns.passive.phone.PhoneSmsType;
 import org.radarcns.passive.phone.PhoneSmsUnread;
+import org.radarcns.phone.commons.DebouncedContentObserver;
 import org.radarcns.topic.AvroTopic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 
 import static android.provider.BaseColumns._ID;
 
@@ -55,20 +62,27 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
     private static final int SQLITE_LIMIT = 1000;
 
     private static final String[] ID_COLUMNS = {_ID};
-    private static final String[] SMS_COLUMNS = {
-            Telephony.Sms.PERSON, Telephony.Sms.ADDRESS, Telephony.Sms.TYPE, Telephony.Sms.BODY};
-    private static final String[] CALL_COLUMNS = {
-            CallLog.Calls.DATE, CallLog.Calls.CACHED_LOOKUP_URI, CallLog.Calls.NUMBER,
-            CallLog.Calls.DURATION, CallLog.Calls.TYPE};
+    private static final String[] COUNT_COLUMNS = {"COUNT(*)"};
 
     // If from contact, then the ID of the sender is a non-zero integer
     private static final SparseArray<PhoneCallType> CALL_TYPES = new SparseArray<>(4);
     private static final SparseArray<PhoneSmsType> SMS_TYPES = new SparseArray<>(7);
     private static final String LAST_SMS_KEY = "last.sms.time";
     private static final String LAST_CALL_KEY = "last.call.time";
+    private static final String LAST_SMS_ID_KEY = "last.sms.id";
+    private static final String LAST_CALL_ID_KEY = "last.call.id";
+    private static final String LAST_SMS_UNREAD_KEY = "last.sms.unread";
+    private static final String COLLECTION_START_KEY = "collection.start.time";
+    private static final String BACKFILL_SMS_KEY = "backfill.sms.time";
+    private static final String BACKFILL_SMS_ID_KEY = "backfill.sms.id";
+    private static final String BACKFILL_CALL_KEY = "backfill.call.time";
+    private static final String BACKFILL_CALL_ID_KEY = "backfill.call.id";
     private static final String ACTIVITY_LAUNCH_WAKE = "org.radarcns.phone.telephony.PhoneLogManager.ACTIVITY_LAUNCH_WAKE";
     private static final int REQUEST_CODE_PENDING_INTENT = 465363071;
-    private static final Pattern IS_NUMBER = Pattern.compile("^[+-]?\\d+$");
+    private static final int TARGET_HASH_CACHE_SIZE = 512;
+    private static final String PIPELINE_CALL = "call log";
+    private static final String PIPELINE_SMS = "SMS log";
+    private static final String PIPELINE_SMS_UNREAD = "unread SMS count";
 
     static {
         CALL_TYPES.append(CallLog.Calls.INCOMING_TYPE, PhoneCallType.INCOMING);
@@ -90,12 +104,24 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
     private final AvroTopic<ObservationKey, PhoneCall> callTopic;
     private final AvroTopic<ObservationKey, PhoneSms> smsTopic;
     private final AvroTopic<ObservationKey, PhoneSmsUnread> smsUnreadTopic;
-    private final HashGenerator hashGenerator;
+    private final TargetHashCache targetHashCache;
     private final SharedPreferences preferences;
     private final ContentResolver db;
     private final OfflineProcessor logProcessor;
-    private long lastSmsTimestamp;
-    private long lastCallTimestamp;
+    private final Handler observerHandler;
+    private final Map<String, Long> pipelineDurations;
+    private final LogCheckpoint smsCheckpoint;
+    private final LogCheckpoint callCheckpoint;
+    private final LogCheckpoint smsBackfillCheckpoint;
+    private final LogCheckpoint callBackfillCheckpoint;
+    private final long collectionStart;
+    private long backfillHorizon;
+    private int backfillPages;
+    private boolean isCountQuerySupported;
+    private int lastNumberUnreadSms;
+    private DebouncedContentObserver logObserver;
+    private long logObserverDelay;
+    private boolean isStarted;
 
     public PhoneLogManager(PhoneLogService context, long logInterval, TimeUnit logUnit) {
         super(context);
@@ -104,26 +130,71 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
         smsUnreadTopic = createTopic("android_phone_sms_unread", PhoneSmsUnread.class);
 
         preferences = context.getSharedPreferences(PhoneLogService.class.getName(), Context.MODE_PRIVATE);
-        lastCallTimestamp = preferences.getLong(LAST_CALL_KEY, System.currentTimeMillis());
-        lastSmsTimestamp = preferences.getLong(LAST_SMS_KEY, System.currentTimeMillis());
+        collectionStart = loadCollectionStart(context);
+        callCheckpoint = new LogCheckpoint(preferences, LAST_CALL_KEY, LAST_CALL_ID_KEY, collectionStart);
+        smsCheckpoint = new LogCheckpoint(preferences, LAST_SMS_KEY, LAST_SMS_ID_KEY, collectionStart);
+        // History is processed backwards, starting just before the regular processing
+        callBackfillCheckpoint = new LogCheckpoint(preferences, BACKFILL_CALL_KEY, BACKFILL_CALL_ID_KEY, collectionStart);
+        smsBackfillCheckpoint = new LogCheckpoint(preferences, BACKFILL_SMS_KEY, BACKFILL_SMS_ID_KEY, collectionStart);
+        backfillHorizon = collectionStart;
+        backfillPages = 0;
+        isCountQuerySupported = true;
+        lastNumberUnreadSms = preferences.getInt(LAST_SMS_UNREAD_KEY, -1);
         db = getService().getContentResolver();
 
-        hashGenerator = new HashGenerator(preferences);
+        targetHashCache = new TargetHashCache(new HashGenerator(preferences), TARGET_HASH_CACHE_SIZE);
         logProcessor = new OfflineProcessor.Builder(context, this)
                 .requestIdentifier(REQUEST_CODE_PENDING_INTENT, ACTIVITY_LAUNCH_WAKE)
                 .interval(logInterval, logUnit)
                 .wake(false)
                 .build();
+        observerHandler = new Handler(Looper.getMainLooper());
+        pipelineDurations = new ConcurrentHashMap<>();
+        logObserverDelay = -1L;
+        isStarted = false;
 
         setName(String.format(context.getString(R.string.call_log_service_name), android.os.Build.MODEL));
     }
 
+    /**
+     * Time from which call and sms logs are processed regularly. Earlier records are only
+     * processed as history.
+     */
+    private long loadCollectionStart(Context context) {
+        long start = preferences.getLong(COLLECTION_START_KEY, -1L);
+        if (start != -1L) {
+            return start;
+        }
+        if (preferences.contains(LAST_CALL_KEY) || preferences.contains(LAST_SMS_KEY)) {
+            // Collection started before its start time was stored. Assume it started at install.
+            try {
+                start = context.getPackageManager()
+                        .getPackageInfo(context.getPackageName(), 0)
+                        .firstInstallTime;
+            } catch (PackageManager.NameNotFoundException ex) {
+                logger.warn("Cannot determine install time, not collecting history before now.");
+                start = System.currentTimeMillis();
+            }
+        } else {
+            start = System.currentTimeMillis();
+        }
+        preferences.edit().putLong(COLLECTION_START_KEY, start).apply();
+        return start;
+    }
+
     public void start(@NonNull Set<String> acceptableIds) {
         updateStatus(DeviceStatusListener.Status.READY);
 
         // Calls and sms, in and outgoing and number of unread sms
         logProcessor.start();
 
+        synchronized (this) {
+            isStarted = true;
+            if (logObserver != null) {
+                logObserver.register(db, CallLog.Calls.CONTENT_URI, Telephony.Sms.CONTENT_URI);
+            }
+        }
+
         updateStatus(DeviceStatusListener.Status.CONNECTED);
     }
 
@@ -133,117 +204,275 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
         logger.info("Call and SMS log: listener activated and set to a period of {} {}", period, unit);
     }
 
+    /**
+     * Process the call and SMS logs shortly after they change, instead of only at the update
+     * rate. The regular updates then only serve as a fallback.
+     * @param delay time without further changes to wait before processing, negative to only
+     *              process the logs at the update rate.
+     * @param unit unit of the delay.
+     */
+    public synchronized void setLogObserverDelay(long delay, TimeUnit unit) {
+        long delayMillis = delay < 0 ? -1L : unit.toMillis(delay);
+        if (delayMillis == logObserverDelay) {
+            return;
+        }
+        logObserverDelay = delayMillis;
+
+        if (logObserver != null) {
+            logObserver.unregister(db);
+            logObserver = null;
+        }
+        if (delayMillis >= 0) {
+            logObserver = new DebouncedContentObserver(observerHandler, delayMillis,
+                    TimeUnit.MILLISECONDS, logProcessor::trigger);
+            if (isStarted) {
+                logObserver.register(db, CallLog.Calls.CONTENT_URI, Telephony.Sms.CONTENT_URI);
+            }
+            logger.info("Call and SMS log: processing changes after {} ms", delayMillis);
+        }
+    }
+
+    /**
+     * Also process the call and sms logs from before data collection started, going backwards
+     * in time. History is only processed after new records have been processed, and only for a
+     * limited number of pages per run.
+     * @param horizon how far back from the start of data collection to process history,
+     *                non-positive to not process history.
+     * @param unit unit of the horizon.
+     * @param pagesPerRun maximum number of pages of each log to process per run.
+     */
+    public synchronized void setBackfill(long horizon, TimeUnit unit, int pagesPerRun) {
+        if (horizon <= 0 || pagesPerRun <= 0) {
+            backfillHorizon = collectionStart;
+            backfillPages = 0;
+        } else {
+            backfillHorizon = collectionStart - unit.toMillis(horizon);
+            backfillPages = pagesPerRun;
+        }
+    }
+
+    /**
+     * Process the call log, the SMS log and the number of unread SMSes, one after another on the
+     * processor thread.
+     */
     @Override
     public void run() {
-        long localCallTimestamp;
-        long localSmsTimestamp;
-
+        long horizon;
+        int pages;
         synchronized (this) {
-            localCallTimestamp = lastCallTimestamp;
-            localSmsTimestamp = lastSmsTimestamp;
+            horizon = backfillHorizon;
+            pages = backfillPages;
         }
 
-        localCallTimestamp = processCallLog(localCallTimestamp);
-        localSmsTimestamp = processSmsLog(localSmsTimestamp);
-        processNumberUnreadSms();
-
-        preferences.edit()
-                .putLong(LAST_CALL_KEY, localCallTimestamp)
-                .putLong(LAST_SMS_KEY, localSmsTimestamp)
-                .apply();
+        runPipeline(PIPELINE_CALL, () -> {
+            processCallLog();
+            backfillCallLog(horizon, pages);
+        });
+        runPipeline(PIPELINE_SMS, () -> {
+            processSmsLog();
+            backfillSmsLog(horizon, pages);
+        });
+        runPipeline(PIPELINE_SMS_UNREAD, this::processNumberUnreadSms);
+
+        logger.debug("Target hash cache: {} hits, {} misses",
+                targetHashCache.getHits(), targetHashCache.getMisses());
+    }
 
-        synchronized (this) {
-            lastCallTimestamp = localCallTimestamp;
-            lastSmsTimestamp = localSmsTimestamp;
+    private void runPipeline(String name, Runnable pipeline) {
+        if (logProcessor.isDone()) {
+            return;
         }
+        long startTime = SystemClock.elapsedRealtime();
+        pipeline.run();
+        long duration = SystemClock.elapsedRealtime() - startTime;
+        pipelineDurations.put(name, duration);
+        logger.info("Call and SMS log: {} took {} ms", name, duration);
     }
 
-    private long processSmsLog(long timestamp) {
-        return processDb(Telephony.Sms.CONTENT_URI, SMS_COLUMNS, Telephony.Sms.DATE, timestamp,
+    /**
+     * Wall time of the last run of each processing pipeline, by pipeline name.
+     * @return map from pipeline name to duration in milliseconds.
+     */
+    @NonNull
+    public Map<String, Long> getPipelineDurations() {
+        return new HashMap<>(pipelineDurations);
+    }
+
+    private void processSmsLog() {
+        SmsLogReader reader = new SmsLogReader();
+        processDb(Telephony.Sms.CONTENT_URI, SmsLogReader.COLUMNS, Telephony.Sms.DATE, smsCheckpoint,
                 record -> {
-                    long date = record.getLong(record.getColumnIndex(Telephony.Sms.DATE));
-
-                    // If from contact, then the ID of the sender is a non-zero integer
-                    boolean isAContact = record.getInt(record.getColumnIndex(Telephony.Sms.PERSON)) > 0;
-                    sendPhoneSms(date / 1000d,
-                            record.getString(record.getColumnIndex(Telephony.Sms.ADDRESS)),
-                            record.getInt(record.getColumnIndex(Telephony.Sms.TYPE)),
-                            record.getString(record.getColumnIndex(Telephony.Sms.BODY)),
-                            isAContact
-                    );
-
-                    return date;
+                    reader.read(record);
+                    sendPhoneSms(reader.date / 1000d, reader.address, reader.type,
+                            reader.bodyLength, reader.isContact);
+                    return reader.date;
                 });
     }
 
-    private long processCallLog(long timestamp) {
-        return processDb(CallLog.Calls.CONTENT_URI, CALL_COLUMNS, CallLog.Calls.DATE, timestamp,
+    private void processCallLog() {
+        CallLogReader reader = new CallLogReader();
+        processDb(CallLog.Calls.CONTENT_URI, CallLogReader.COLUMNS, CallLog.Calls.DATE, callCheckpoint,
                 record -> {
-                    long date = record.getLong(record.getColumnIndex(CallLog.Calls.DATE));
-
-                    // If contact, then the contact lookup uri is given
-                    boolean targetIsAContact = record.getString(record.getColumnIndex(CallLog.Calls.CACHED_LOOKUP_URI)) != null;
+                    reader.read(record);
+                    sendPhoneCall(reader.date / 1000d, reader.number, reader.duration,
+                            reader.type, reader.isContact);
+                    return reader.date;
+                });
+    }
 
-                    sendPhoneCall(date / 1000d,
-                            record.getString(record.getColumnIndex(CallLog.Calls.NUMBER)),
-                            record.getFloat(record.getColumnIndex(CallLog.Calls.DURATION)),
-                            record.getInt(record.getColumnIndex(CallLog.Calls.TYPE)),
-                            targetIsAContact
-                    );
+    private void backfillSmsLog(long horizon, int pages) {
+        if (pages <= 0) {
+            return;
+        }
+        SmsLogReader reader = new SmsLogReader();
+        backfillDb(Telephony.Sms.CONTENT_URI, SmsLogReader.COLUMNS, Telephony.Sms.DATE,
+                smsBackfillCheckpoint, horizon, pages,
+                record -> {
+                    reader.read(record);
+                    sendPhoneSms(reader.date / 1000d, reader.address, reader.type,
+                            reader.bodyLength, reader.isContact);
+                    return reader.date;
+                });
+    }
 
-                    return date;
+    private void backfillCallLog(long horizon, int pages) {
+        if (pages <= 0) {
+            return;
+        }
+        CallLogReader reader = new CallLogReader();
+        backfillDb(CallLog.Calls.CONTENT_URI, CallLogReader.COLUMNS, CallLog.Calls.DATE,
+                callBackfillCheckpoint, horizon, pages,
+                record -> {
+                    reader.read(record);
+                    sendPhoneCall(reader.date / 1000d, reader.number, reader.duration,
+                            reader.type, reader.isContact);
+                    return reader.date;
                 });
     }
 
-    private long processDb(Uri contentUri, String[] columns, String dateColumn, long previousTimestamp, RecordProcessor processor) {
+    /**
+     * Process all records after the checkpoint, in pages ordered by date and ID. The checkpoint
+     * is updated after each page.
+     */
+    private void processDb(Uri contentUri, String[] columns, String dateColumn, LogCheckpoint checkpoint, RecordProcessor processor) {
+        String where = dateColumn + " > ? OR (" + dateColumn + " = ? AND " + _ID + " > ?)";
+        String orderBy = dateColumn + " ASC, " + _ID + " ASC LIMIT " + SQLITE_LIMIT;
+        processPages(contentUri, columns, where, null, orderBy, checkpoint, Integer.MAX_VALUE, processor);
+    }
+
+    /**
+     * Process records before the checkpoint and not before the horizon, in pages ordered by
+     * descending date and ID. The checkpoint is updated after each page.
+     */
+    private void backfillDb(Uri contentUri, String[] columns, String dateColumn, LogCheckpoint checkpoint, long horizon, int maxPages, RecordProcessor processor) {
+        if (checkpoint.getTimestamp() < horizon) {
+            return;
+        }
+        String where = dateColumn + " >= ? AND (" + dateColumn + " < ? OR (" + dateColumn + " = ? AND " + _ID + " < ?))";
+        String orderBy = dateColumn + " DESC, " + _ID + " DESC LIMIT " + SQLITE_LIMIT;
+        processPages(contentUri, columns, where, Long.toString(horizon), orderBy, checkpoint, maxPages, processor);
+    }
+
+    /**
+     * Process pages of records relative to the checkpoint.
+     * @param where selection, with as arguments the optional first argument, and then the
+     *              checkpoint timestamp twice and the checkpoint ID.
+     * @param firstArg first selection argument, or null if there is none.
+     */
+    private void processPages(Uri contentUri, String[] columns, String where, String firstArg, String orderBy, LogCheckpoint checkpoint, int maxPages, RecordProcessor processor) {
         if (logProcessor.isDone()) {
-            return previousTimestamp;
+            return;
+        }
+        int offset = firstArg != null ? 1 : 0;
+        String[] whereArgs = new String[offset + 3];
+        if (firstArg != null) {
+            whereArgs[0] = firstArg;
         }
-        String where = dateColumn + " > ?";
-        String orderBy = dateColumn + " ASC LIMIT " + SQLITE_LIMIT;
 
         int numUpdates;
-        long lastTimestamp = previousTimestamp;
+        int numPages = 0;
+        long lastTimestamp = checkpoint.getTimestamp();
+        long lastId = checkpoint.getId();
 
         do {
-            String[] whereArgs = new String[] {Long.toString(lastTimestamp)};
+            whereArgs[offset] = Long.toString(lastTimestamp);
+            whereArgs[offset + 1] = whereArgs[offset];
+            whereArgs[offset + 2] = Long.toString(lastId);
             numUpdates = 0;
-            // Query all sms with a date later than the last date seen and orderBy by date
+            // Query all records after the last record seen, ordered by date and ID
             try (Cursor c = db.query(contentUri, columns, where, whereArgs, orderBy)) {
                 if (c == null) {
-                    return lastTimestamp;
+                    return;
                 }
+                int idIndex = c.getColumnIndexOrThrow(_ID);
 
                 while (c.moveToNext() && !logProcessor.isDone()) {
-                    numUpdates++;
                     lastTimestamp = processor.processRecord(c);
+                    lastId = c.getLong(idIndex);
+                    numUpdates++;
                 }
             } catch (Exception ex) {
                 logger.error("Error in processing the sms log", ex);
             }
-        } while (numUpdates == SQLITE_LIMIT && !logProcessor.isDone());
-
-        return lastTimestamp;
+            if (numUpdates > 0) {
+                checkpoint.update(lastTimestamp, lastId);
+            }
+            numPages++;
+        } while (numUpdates == SQLITE_LIMIT && numPages < maxPages && !logProcessor.isDone());
     }
 
+    /** Send the number of unread SMSes, if it changed since it was last sent. */
     private void processNumberUnreadSms() {
         if (logProcessor.isDone()) {
             return;
         }
+        int numberUnread = countUnreadSms();
+        if (numberUnread < 0 || numberUnread == lastNumberUnreadSms) {
+            return;
+        }
+        sendNumberUnreadSms(numberUnread);
+        lastNumberUnreadSms = numberUnread;
+        preferences.edit().putInt(LAST_SMS_UNREAD_KEY, numberUnread).apply();
+    }
+
+    /**
+     * Count the number of unread SMSes. This uses a COUNT(*) projection if the SMS provider
+     * supports it, and otherwise counts the rows of an ID query.
+     * @return number of unread SMSes, or -1 if they could not be counted.
+     */
+    private int countUnreadSms() {
         String where = Telephony.Sms.READ + " = 0";
+        if (isCountQuerySupported) {
+            try (Cursor c = db.query(Telephony.Sms.CONTENT_URI, COUNT_COLUMNS, where, null, null)) {
+                if (c == null) {
+                    return -1;
+                }
+                if (c.getCount() == 1 && c.moveToFirst()) {
+                    return c.getInt(0);
+                }
+                logger.warn("SMS provider returned {} rows for a count query, counting rows instead",
+                        c.getCount());
+            } catch (Exception ex) {
+                logger.warn("SMS provider does not support count queries, counting rows instead: {}",
+                        ex.toString());
+            }
+            isCountQuerySupported = false;
+        }
+
         try (Cursor c = db.query(Telephony.Sms.CONTENT_URI, ID_COLUMNS, where, null, null)) {
             if (c == null) {
-                return;
+                return -1;
             }
-            sendNumberUnreadSms(c.getCount());
+            return c.getCount();
         } catch (Exception ex) {
             logger.error("Error in processing the sms log", ex);
+            return -1;
         }
     }
 
     private void sendPhoneCall(double eventTimestamp, String target, float duration, int typeCode, boolean targetIsContact) {
-        Long phoneNumber = getNumericPhoneNumber(target);
-        ByteBuffer targetKey = createTargetHashKey(target, phoneNumber);
+        int phoneNumberSuffix = PhoneNumberNormalizer.significantSuffix(target);
+        ByteBuffer targetKey = createTargetHashKey(target, phoneNumberSuffix);
 
         PhoneCallType type = CALL_TYPES.get(typeCode, PhoneCallType.UNKNOWN);
 
@@ -256,7 +485,7 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
                         targetKey,
                         type,
                         targetIsContact,
-                        phoneNumber == null,
+                        phoneNumberSuffix == PhoneNumberNormalizer.NOT_A_NUMBER,
                         target.length()
                 )
         );
@@ -264,12 +493,11 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
         logger.info("Call log: {}, {}, {}, {}, {}, {}, contact? {}", target, targetKey, duration, type, eventTimestamp, timestamp, targetIsContact);
     }
 
-    private void sendPhoneSms(double eventTimestamp, String target, int typeCode, String message, boolean targetIsContact) {
-        Long phoneNumber = getNumericPhoneNumber(target);
-        ByteBuffer targetKey = createTargetHashKey(target, phoneNumber);
+    private void sendPhoneSms(double eventTimestamp, String target, int typeCode, int length, boolean targetIsContact) {
+        int phoneNumberSuffix = PhoneNumberNormalizer.significantSuffix(target);
+        ByteBuffer targetKey = createTargetHashKey(target, phoneNumberSuffix);
 
         PhoneSmsType type = SMS_TYPES.get(typeCode, PhoneSmsType.UNKNOWN);
-        int length = message.length();
 
         // Only incoming messages are associated with a contact. For outgoing we don't know
         Boolean sendFromContact = null;
@@ -286,7 +514,7 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
                         type,
                         length,
                         sendFromContact,
-                        phoneNumber == null,
+                        phoneNumberSuffix == PhoneNumberNormalizer.NOT_A_NUMBER,
                         target.length()
                 )
         );
@@ -302,43 +530,38 @@ public class PhoneLogManager extends AbstractDeviceManager<PhoneLogService, Base
     }
 
     /**
-     * Returns true if target is numeric (e.g. not 'Dropbox' or 'Google')
-     * @param target sms/phone target
-     * @return boolean
-     */
-    private Long getNumericPhoneNumber(String target) {
-        if (IS_NUMBER.matcher(target).matches()) {
-            return Long.parseLong(target);
-        } else {
-            return null;
-        }
-    }
-
-    /**
-     * Extracts last 9 characters and hashes the result with a salt.
-     * For phone numbers this means that the area code is removed
-     * E.g.: +31232014111 becomes 232014111 and 0612345678 becomes 612345678 (before hashing)
+     * Hashes the last 9 digits of a phone number with a salt.
      * If target is a name instead of a number (e.g. when sms), then hash this name
      * @param target String
-     * @param phoneNumber phone number, null if it is not a number
+     * @param phoneNumberSuffix result of {@link PhoneNumberNormalizer#significantSuffix(CharSequence)}
      * @return MAC-SHA256 encoding of target or null if the target is anonymous
      */
-    private ByteBuffer createTargetHashKey(String target, Long phoneNumber) {
+    private ByteBuffer createTargetHashKey(String target, int phoneNumberSuffix) {
         // If non-numerical, then hash the target directly
-        if (phoneNumber == null) {
-            return hashGenerator.createHashByteBuffer(target);
-        } else if (phoneNumber < 0) {
+        if (phoneNumberSuffix == PhoneNumberNormalizer.NOT_A_NUMBER) {
+            return targetHashCache.hash(target);
+        } else if (phoneNumberSuffix == PhoneNumberNormalizer.ANONYMOUS) {
             return null;
         } else {
-            // remove international prefixes if present, since that would
+            // international prefixes are removed, since that would
             // give inconsistent results -> 0612345678 vs +31612345678
-            int phoneNumberSuffix = (int) (phoneNumber % 1_000_000_000L);
-            return hashGenerator.createHashByteBuffer(phoneNumberSuffix);
+            return targetHashCache.hash(phoneNumberSuffix);
         }
     }
 
+    /** Fraction of target hashes that were served from cache, NaN if none were computed. */
+    public double getTargetHashHitRate() {
+        return targetHashCache.getHitRate();
+    }
+
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            if (logObserver != null) {
+                logObserver.unregister(db);
+            }
+            isStarted = false;
+        }
         logProcessor.close();
         super.close();
     }
@@ -24,14 +24,23 @@ import org.radarcns.android.device.DeviceService;
 
 import java.util.concurrent.TimeUnit;
 
+import static org.radarcns.phone.PhoneLogProvider.CALL_SMS_LOG_BACKFILL_DAYS_KEY;
+import static org.radarcns.phone.PhoneLogProvider.CALL_SMS_LOG_BACKFILL_PAGES_KEY;
 import static org.radarcns.phone.PhoneLogProvider.CALL_SMS_LOG_INTERVAL_KEY;
+import static org.radarcns.phone.PhoneLogProvider.CALL_SMS_LOG_OBSERVER_DELAY_KEY;
 
 public class PhoneLogService extends DeviceService<BaseDeviceState> {
     private long logInterval;
+    private long logObserverDelay;
+    private long backfillDays;
+    private int backfillPages;
 
     @Override
     protected PhoneLogManager createDeviceManager() {
-        return new PhoneLogManager(this, logInterval, TimeUnit.SECONDS);
+        PhoneLogManager manager = new PhoneLogManager(this, logInterval, TimeUnit.SECONDS);
+        manager.setLogObserverDelay(logObserverDelay, TimeUnit.SECONDS);
+        manager.setBackfill(backfillDays, TimeUnit.DAYS, backfillPages);
+        return manager;
     }
 
     @NonNull
@@ -44,9 +53,14 @@ public class PhoneLogService extends DeviceService<BaseDeviceState> {
     protected void onInvocation(@NonNull Bundle bundle) {
         super.onInvocation(bundle);
         logInterval = bundle.getLong(CALL_SMS_LOG_INTERVAL_KEY);
+        logObserverDelay = bundle.getLong(CALL_SMS_LOG_OBSERVER_DELAY_KEY);
+        backfillDays = bundle.getLong(CALL_SMS_LOG_BACKFILL_DAYS_KEY);
+        backfillPages = bundle.getInt(CALL_SMS_LOG_BACKFILL_PAGES_KEY);
         PhoneLogManager deviceManager = (PhoneLogManager) getDeviceManager();
         if (deviceManager != null) {
             deviceManager.setCallAndSmsLogUpdateRate(logInterval, TimeUnit.SECONDS);
+            deviceManager.setLogObserverDelay(logObserverDelay, TimeUnit.SECONDS);
+            deviceManager.setBackfill(backfillDays, TimeUnit.DAYS, backfillPages);
         }
     }
 
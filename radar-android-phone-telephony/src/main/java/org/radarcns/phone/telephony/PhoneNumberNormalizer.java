@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Extracts the significant digits of a phone number in a single pass, without regular
+ * expressions or allocations. Formatting characters (spaces, dashes, dots, slashes and
+ * parentheses) are ignored, so "+31 6 1234-5678" and "0612345678" give the same result.
+ */
+final class PhoneNumberNormalizer {
+    /** Result for targets that are not phone numbers, e.g. 'Dropbox' or 'Google'. */
+    static final int NOT_A_NUMBER = -1;
+    /** Result for negative numbers, which are used for private or unknown numbers. */
+    static final int ANONYMOUS = -2;
+
+    private static final int SUFFIX_MODULUS = 1_000_000_000;
+
+    private PhoneNumberNormalizer() {
+        // utility class
+    }
+
+    /**
+     * Get the last 9 digits of a phone number. For phone numbers this means that the area code
+     * is removed, e.g. +31232014111 becomes 232014111 and 0612345678 becomes 612345678.
+     * @param target sms/phone target
+     * @return the last 9 digits as a non-negative number, {@link #NOT_A_NUMBER} if the target is
+     *         not a phone number or {@link #ANONYMOUS} if it is a negative number.
+     */
+    static int significantSuffix(@NonNull CharSequence target) {
+        int length = target.length();
+        int i = 0;
+        boolean isNegative = false;
+
+        if (length > 0) {
+            char first = target.charAt(0);
+            if (first == '+') {
+                i++;
+            } else if (first == '-') {
+                isNegative = true;
+                i++;
+            }
+        }
+
+        int suffix = 0;
+        boolean hasDigits = false;
+        boolean isZero = true;
+
+        for (; i < length; i++) {
+            char c = target.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                suffix = (int) ((suffix * 10L + digit) % SUFFIX_MODULUS);
+                hasDigits = true;
+                if (digit != 0) {
+                    isZero = false;
+                }
+            } else if (!isFormatting(c)) {
+                return NOT_A_NUMBER;
+            }
+        }
+
+        if (!hasDigits) {
+            return NOT_A_NUMBER;
+        } else if (isNegative && !isZero) {
+            return ANONYMOUS;
+        } else {
+            return suffix;
+        }
+    }
+
+    private static boolean isFormatting(char c) {
+        return c == ' ' || c == '-' || c == '(' || c == ')' || c == '.' || c == '/';
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+import android.provider.Telephony;
+import android.support.annotation.NonNull;
+
+/**
+ * Reads SMS log rows. The message body is copied into a reusable buffer to determine its length,
+ * so no String is created for it.
+ */
+class SmsLogReader extends CursorReader {
+    /** Columns that should be present in the cursor. */
+    static final String[] COLUMNS = {
+            BaseColumns._ID, Telephony.Sms.DATE, Telephony.Sms.PERSON, Telephony.Sms.ADDRESS,
+            Telephony.Sms.TYPE, Telephony.Sms.BODY};
+
+    private final CharArrayBuffer bodyBuffer = new CharArrayBuffer(160);
+    private int dateIndex;
+    private int personIndex;
+    private int addressIndex;
+    private int typeIndex;
+    private int bodyIndex;
+
+    /** Date of the message in milliseconds since the epoch. */
+    long date;
+    /** Whether the sender is a contact. */
+    boolean isContact;
+    /** Address of the message. */
+    String address;
+    /** Message type code. */
+    int type;
+    /** Number of characters in the message body. */
+    int bodyLength;
+
+    @Override
+    protected void bind(@NonNull Cursor cursor) {
+        dateIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.DATE);
+        personIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.PERSON);
+        addressIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.ADDRESS);
+        typeIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.TYPE);
+        bodyIndex = cursor.getColumnIndexOrThrow(Telephony.Sms.BODY);
+    }
+
+    @Override
+    protected void readRow(@NonNull Cursor cursor) {
+        date = cursor.getLong(dateIndex);
+        // If from contact, then the ID of the sender is a non-zero integer
+        isContact = cursor.getInt(personIndex) > 0;
+        address = cursor.getString(addressIndex);
+        type = cursor.getInt(typeIndex);
+        if (cursor.isNull(bodyIndex)) {
+            bodyLength = 0;
+        } else {
+            cursor.copyStringToBuffer(bodyIndex, bodyBuffer);
+            bodyLength = bodyBuffer.sizeCopied;
+        }
+    }
+}
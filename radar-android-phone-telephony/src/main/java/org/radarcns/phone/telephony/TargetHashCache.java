@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import android.support.annotation.NonNull;
+import android.util.SparseIntArray;
+
+import org.radarcns.android.util.HashGenerator;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of target hashes, so that frequent contacts are not hashed again for
+ * every call or message. Numeric targets are stored without boxing. The cache is only kept in
+ * memory, so plaintext targets are never persisted. Returned buffers are read-only and share
+ * their content with the cache.
+ */
+class TargetHashCache {
+    private final HashGenerator hashGenerator;
+    private final int capacity;
+
+    private final SparseIntArray numberSlots;
+    private final int[] numberKeys;
+    private final ByteBuffer[] numberHashes;
+    private final long[] numberLastUse;
+    private int numberSize;
+    private long useCounter;
+
+    private final Map<String, ByteBuffer> nameHashes;
+
+    private long hits;
+    private long misses;
+
+    TargetHashCache(@NonNull HashGenerator hashGenerator, int capacity) {
+        this.hashGenerator = hashGenerator;
+        this.capacity = capacity;
+
+        numberSlots = new SparseIntArray(capacity);
+        numberKeys = new int[capacity];
+        numberHashes = new ByteBuffer[capacity];
+        numberLastUse = new long[capacity];
+        numberSize = 0;
+        useCounter = 0L;
+
+        nameHashes = new LinkedHashMap<String, ByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ByteBuffer> eldest) {
+                return size() > TargetHashCache.this.capacity;
+            }
+        };
+    }
+
+    /** Hash of a numeric target. */
+    @NonNull
+    synchronized ByteBuffer hash(int target) {
+        int slot = numberSlots.get(target, -1);
+        if (slot >= 0) {
+            hits++;
+        } else {
+            misses++;
+            if (numberSize < capacity) {
+                slot = numberSize++;
+            } else {
+                slot = leastRecentlyUsedSlot();
+                numberSlots.delete(numberKeys[slot]);
+            }
+            numberKeys[slot] = target;
+            numberHashes[slot] = hashGenerator.createHashByteBuffer(target).asReadOnlyBuffer();
+            numberSlots.put(target, slot);
+        }
+        numberLastUse[slot] = ++useCounter;
+        return numberHashes[slot].duplicate();
+    }
+
+    /** Hash of a non-numeric target. */
+    @NonNull
+    synchronized ByteBuffer hash(@NonNull String target) {
+        ByteBuffer hash = nameHashes.get(target);
+        if (hash != null) {
+            hits++;
+        } else {
+            misses++;
+            hash = hashGenerator.createHashByteBuffer(target).asReadOnlyBuffer();
+            nameHashes.put(target, hash);
+        }
+        return hash.duplicate();
+    }
+
+    private int leastRecentlyUsedSlot() {
+        int slot = 0;
+        for (int i = 1; i < numberSize; i++) {
+            if (numberLastUse[i] < numberLastUse[slot]) {
+                slot = i;
+            }
+        }
+        return slot;
+    }
+
+    /** Fraction of lookups that were served from the cache, NaN if there were no lookups. */
+    synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? Double.NaN : hits / (double) total;
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+}
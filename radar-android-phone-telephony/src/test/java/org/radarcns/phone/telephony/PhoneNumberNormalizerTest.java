@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.telephony;
+
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class PhoneNumberNormalizerTest {
+    /** Pattern that was used to detect phone numbers before the scanner. */
+    private static final Pattern IS_NUMBER = Pattern.compile("^[+-]?\\d+$");
+
+    /** Result of the regular expression based implementation that the scanner replaces. */
+    private static int legacySuffix(String target) {
+        if (!IS_NUMBER.matcher(target).matches()) {
+            return PhoneNumberNormalizer.NOT_A_NUMBER;
+        }
+        long phoneNumber = Long.parseLong(target);
+        if (phoneNumber < 0) {
+            return PhoneNumberNormalizer.ANONYMOUS;
+        }
+        return (int) (phoneNumber % 1_000_000_000L);
+    }
+
+    @Test
+    public void cleanNumbersMatchLegacy() {
+        String[] targets = {"+31232014111", "0612345678", "112", "0", "-1", "-2", "+0",
+                "123456789", "1234567890", "Dropbox", "Google", "", "+", "-"};
+        for (String target : targets) {
+            assertEquals(target, legacySuffix(target),
+                    PhoneNumberNormalizer.significantSuffix(target));
+        }
+    }
+
+    @Test
+    public void formattedNumbers() {
+        assertEquals(612345678, PhoneNumberNormalizer.significantSuffix("+31 6 1234-5678"));
+        assertEquals(612345678, PhoneNumberNormalizer.significantSuffix("+31 (0)6 1234 5678"));
+        assertEquals(612345678, PhoneNumberNormalizer.significantSuffix("06.12.34.56.78"));
+        assertEquals(612345678, PhoneNumberNormalizer.significantSuffix("06/12345678"));
+        assertEquals(PhoneNumberNormalizer.ANONYMOUS,
+                PhoneNumberNormalizer.significantSuffix("-2 "));
+        assertEquals(PhoneNumberNormalizer.NOT_A_NUMBER,
+                PhoneNumberNormalizer.significantSuffix("06 1234 ABCD"));
+        assertEquals(PhoneNumberNormalizer.NOT_A_NUMBER,
+                PhoneNumberNormalizer.significantSuffix(" - "));
+    }
+
+    @Test
+    public void longNumbers() {
+        assertEquals(123456789,
+                PhoneNumberNormalizer.significantSuffix("99999999999999999999123456789"));
+    }
+}
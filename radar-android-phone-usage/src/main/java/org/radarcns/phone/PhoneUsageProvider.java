@@ -37,8 +37,11 @@ public class PhoneUsageProvider extends DeviceServiceProvider<BaseDeviceState> {
     private static final String PHONE_PREFIX = "org.radarcns.phone.usage";
     private static final String PHONE_USAGE_INTERVAL = "phone_usage_interval_seconds";
     private static final long USAGE_EVENT_PERIOD_DEFAULT = 60*60; // one hour
+    private static final String PHONE_USAGE_ACTIVE_INTERVAL = "phone_usage_active_interval_seconds";
+    private static final long PHONE_USAGE_ACTIVE_INTERVAL_DEFAULT = -1L;
 
     public static final String PHONE_USAGE_INTERVAL_KEY = PHONE_PREFIX + PHONE_USAGE_INTERVAL;
+    public static final String PHONE_USAGE_ACTIVE_INTERVAL_KEY = PHONE_PREFIX + PHONE_USAGE_ACTIVE_INTERVAL;
 
     @Override
     public String getDescription() {
@@ -89,6 +92,8 @@ public class PhoneUsageProvider extends DeviceServiceProvider<BaseDeviceState> {
         RadarConfiguration config = getConfig();
         bundle.putLong(PHONE_USAGE_INTERVAL_KEY, config.getLong(
                 PHONE_USAGE_INTERVAL, USAGE_EVENT_PERIOD_DEFAULT));
+        bundle.putLong(PHONE_USAGE_ACTIVE_INTERVAL_KEY, config.getLong(
+                PHONE_USAGE_ACTIVE_INTERVAL, PHONE_USAGE_ACTIVE_INTERVAL_DEFAULT));
     }
 
     @Override
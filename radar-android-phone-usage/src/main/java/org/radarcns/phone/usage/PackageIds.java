@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone.usage;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns small integer IDs to package names, so that consecutive usage events can be compared by
+ * ID, and keeps a single name instance per package for the records that are queued. IDs are only
+ * valid while the process runs.
+ */
+class PackageIds {
+    static final int UNKNOWN = -1;
+
+    private final Map<String, Integer> ids;
+    private final List<String> names;
+    private String lastName;
+    private int lastId;
+
+    PackageIds() {
+        ids = new HashMap<>();
+        names = new ArrayList<>();
+        lastName = null;
+        lastId = UNKNOWN;
+    }
+
+    /** Get the ID of a package, adding it if it was not seen before. */
+    int idOf(@NonNull String packageName) {
+        // events of a single query share their name instances, so runs of events of the same
+        // package are recognized without hashing
+        if (packageName == lastName) {
+            return lastId;
+        }
+        Integer id = ids.get(packageName);
+        if (id == null) {
+            id = names.size();
+            ids.put(packageName, id);
+            names.add(packageName);
+        }
+        lastName = packageName;
+        lastId = id;
+        return id;
+    }
+
+    /** Get the name of a package by ID. */
+    @NonNull
+    String nameOf(int id) {
+        return names.get(id);
+    }
+}
@@ -20,6 +20,7 @@ import android.app.usage.UsageEvents;
 import android.app.usage.UsageStatsManager;
 import android.content.*;
 import android.os.Build;
+import android.os.PowerManager;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.SparseArray;
@@ -61,10 +62,13 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
     private static final String LAST_EVENT_TIMESTAMP = "org.radarcns.phone.timestamp";
     private static final String LAST_EVENT_TYPE = "org.radarcns.phone.usage.PhoneUsageManager.lastEventType";
     private static final String LAST_EVENT_IS_SENT = "org.radarcns.phone.usage.PhoneUsageManager.lastEventIsSent";
+    private static final String LAST_QUERY_TIMESTAMP = "org.radarcns.phone.usage.PhoneUsageManager.lastQueryTimestamp";
     private static final String LAST_USER_INTERACTION = "org.radarcns.phone.lastAction";
     private static final String ACTION_BOOT = "org.radarcns.phone.ACTION_BOOT";
     private static final String ACTION_UPDATE_EVENTS = "org.radarcns.phone.usage.PhoneUsageManager.ACTION_UPDATE_EVENTS";
     private static final int USAGE_EVENT_REQUEST_CODE = 586106;
+    /** Maximum time span of a single usage event query, to bound memory use after long gaps. */
+    private static final long QUERY_WINDOW_MILLIS = TimeUnit.HOURS.toMillis(1);
 
     @Nullable
     private final AvroTopic<ObservationKey, PhoneUsageEvent> usageEventTopic;
@@ -79,11 +83,19 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
     private final SharedPreferences preferences;
     @NonNull
     private final OfflineProcessor phoneUsageProcessor;
+    private volatile long usageEventIntervalMillis;
+    private volatile long activeIntervalMillis;
+    private volatile boolean isScreenOff;
+    private volatile boolean isPolledSinceScreenOff;
+    @NonNull
+    private final PackageIds packageIds;
 
+    private int lastPackageId;
     private String lastPackageName;
     private long lastTimestamp;
     private int lastEventType;
     private boolean lastEventIsSent;
+    private long lastQueryTimestamp;
 
     public PhoneUsageManager(PhoneUsageService context, long usageEventInterval, TimeUnit unit) {
         super(context);
@@ -102,6 +114,7 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
             usageEventTopic = null;
         }
         this.preferences = context.getSharedPreferences(PhoneUsageService.class.getName(), Context.MODE_PRIVATE);
+        this.packageIds = new PackageIds();
         this.loadLastEvent();
 
         // Listen for screen lock/unlock events
@@ -118,13 +131,34 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
                 }
 
                 sendInteractionState(intent.getAction());
+                updateScreenState(intent.getAction());
             }
         };
 
+        usageEventIntervalMillis = unit.toMillis(usageEventInterval);
+        activeIntervalMillis = -1L;
+        isScreenOff = false;
+        isPolledSinceScreenOff = false;
+
         phoneUsageProcessor = new OfflineProcessor.Builder(context,
                 () -> {
+                    // no new usage events occur while the screen is off
+                    if (isScreenOff && isPolledSinceScreenOff) {
+                        logger.debug("Screen is off, skipping usage event query");
+                        return;
+                    }
+                    // with an active interval of 0, events are only queried when the screen
+                    // turns off
+                    if (activeIntervalMillis == 0 && !isScreenOff) {
+                        logger.debug("Phone is unlocked, skipping usage event query");
+                        return;
+                    }
+                    boolean wasScreenOff = isScreenOff;
                     processUsageEvents();
                     storeLastEvent();
+                    if (wasScreenOff) {
+                        isPolledSinceScreenOff = true;
+                    }
                 })
                 .requestIdentifier(USAGE_EVENT_REQUEST_CODE, ACTION_UPDATE_EVENTS)
                 .interval(usageEventInterval, unit)
@@ -137,6 +171,10 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
     @Override
     public void start(@NonNull final Set<String> acceptableIds) {
         updateStatus(DeviceStatusListener.Status.READY);
+        if (activeIntervalMillis >= 0) {
+            PowerManager powerManager = (PowerManager) getService().getSystemService(Context.POWER_SERVICE);
+            isScreenOff = powerManager != null && !powerManager.isInteractive();
+        }
         // Start query of usage events
         phoneUsageProcessor.start();
 
@@ -187,18 +225,76 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
      * @param interval collection interval in seconds
      */
     public void setUsageEventUpdateRate(long interval, TimeUnit unit) {
-        phoneUsageProcessor.setInterval(interval, unit);
+        usageEventIntervalMillis = unit.toMillis(interval);
+        if (activeIntervalMillis <= 0 || isScreenOff) {
+            phoneUsageProcessor.setInterval(interval, unit);
+        }
         logger.info("Usage event alarm activated and set to a period of {} seconds", interval);
     }
 
+    /**
+     * Set the interval in which to collect logs about app usage while the phone is unlocked. If
+     * non-negative, usage events are also collected when the screen turns off, and not again until
+     * the phone is unlocked. The regular update rate is then used while the phone is locked.
+     * @param interval collection interval while the phone is unlocked, 0 to only collect logs when
+     *                 the screen turns off, or negative to use the regular update rate only.
+     */
+    public void setActiveUsageEventUpdateRate(long interval, TimeUnit unit) {
+        if (interval < 0) {
+            activeIntervalMillis = -1L;
+            isScreenOff = false;
+        } else {
+            activeIntervalMillis = unit.toMillis(interval);
+        }
+        if (activeIntervalMillis > 0 && !isScreenOff) {
+            phoneUsageProcessor.setInterval(activeIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            phoneUsageProcessor.setInterval(usageEventIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void updateScreenState(String action) {
+        if (activeIntervalMillis < 0) {
+            return;
+        }
+        if (Intent.ACTION_SCREEN_OFF.equals(action)) {
+            isScreenOff = true;
+            isPolledSinceScreenOff = false;
+            phoneUsageProcessor.setInterval(usageEventIntervalMillis, TimeUnit.MILLISECONDS);
+            // collect the usage events up to the screen turning off
+            phoneUsageProcessor.trigger();
+        } else if (Intent.ACTION_USER_PRESENT.equals(action)) {
+            isScreenOff = false;
+            if (activeIntervalMillis > 0) {
+                phoneUsageProcessor.setInterval(activeIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
     private void processUsageEvents() {
         if (phoneUsageProcessor.isDone() || usageStatsManager == null) {
             return;
         }
 
-        // Get events from previous event to now or from a fixed history
-        UsageEvents usageEvents = usageStatsManager.queryEvents(lastTimestamp, System.currentTimeMillis());
+        // Get events from previous query to now in bounded windows, so that a long gap does not
+        // load all of its events at once
+        long now = System.currentTimeMillis();
+        while (lastQueryTimestamp < now && !phoneUsageProcessor.isDone()) {
+            long windowEnd = Math.min(lastQueryTimestamp + QUERY_WINDOW_MILLIS, now);
+            processUsageEvents(usageStatsManager.queryEvents(lastQueryTimestamp, windowEnd));
+
+            if (phoneUsageProcessor.isDone()) {
+                // window was not completely processed, continue from the last event next time
+                break;
+            }
+            lastQueryTimestamp = windowEnd;
+
+            // Store the last previous event on internal memory for the next window or run
+            this.storeLastEvent();
+        }
+    }
 
+    private void processUsageEvents(UsageEvents usageEvents) {
         // Loop through all events, send opening and closing of app
         // Assume events are ordered on timestamp in ascending order (old to new)
         UsageEvents.Event event = new UsageEvents.Event();
@@ -209,23 +305,21 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
                 continue;
             }
 
-            if (event.getPackageName().equals(lastPackageName)) {
-               updateLastEvent(event, false);
-           } else {
+            int packageId = packageIds.idOf(event.getPackageName());
+            if (packageId == lastPackageId) {
+                updateLastEvent(event, packageId, false);
+            } else {
                 // send this closing event
                 if (lastPackageName != null && !lastEventIsSent) {
                     sendLastEvent();
                 }
 
-                updateLastEvent(event, true);
+                updateLastEvent(event, packageId, true);
 
                 // Send the opening of new event
                 sendLastEvent();
             }
         }
-
-        // Store the last previous event on internal memory for the next run
-        this.storeLastEvent();
     }
 
     private void sendLastEvent() {
@@ -243,8 +337,9 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
         }
     }
 
-    private void updateLastEvent(UsageEvents.Event event, boolean isSent) {
-        lastPackageName = event.getPackageName();
+    private void updateLastEvent(UsageEvents.Event event, int packageId, boolean isSent) {
+        lastPackageId = packageId;
+        lastPackageName = packageIds.nameOf(packageId);
         lastTimestamp = event.getTimeStamp();
         lastEventType = event.getEventType();
         lastEventIsSent = isSent;
@@ -256,14 +351,18 @@ class PhoneUsageManager extends AbstractDeviceManager<PhoneUsageService, BaseDev
                 .putLong(LAST_EVENT_TIMESTAMP, lastTimestamp)
                 .putInt(LAST_EVENT_TYPE, lastEventType)
                 .putBoolean(LAST_EVENT_IS_SENT, lastEventIsSent)
+                .putLong(LAST_QUERY_TIMESTAMP, lastQueryTimestamp)
                 .apply();
     }
 
     private void loadLastEvent() {
         lastPackageName = preferences.getString(LAST_PACKAGE_NAME, null);
+        lastPackageId = lastPackageName != null
+                ? packageIds.idOf(lastPackageName) : PackageIds.UNKNOWN;
         lastTimestamp = preferences.getLong(LAST_EVENT_TIMESTAMP, System.currentTimeMillis());
         lastEventType = preferences.getInt(LAST_EVENT_TYPE, 0);
         lastEventIsSent = preferences.getBoolean(LAST_EVENT_IS_SENT, true);
+        lastQueryTimestamp = preferences.getLong(LAST_QUERY_TIMESTAMP, lastTimestamp);
 
         if (lastPackageName == null) {
             logger.info("No previous event details stored");
@@ -24,6 +24,7 @@ import org.radarcns.android.device.DeviceService;
 
 import java.util.concurrent.TimeUnit;
 
+import static org.radarcns.phone.PhoneUsageProvider.PHONE_USAGE_ACTIVE_INTERVAL_KEY;
 import static org.radarcns.phone.PhoneUsageProvider.PHONE_USAGE_INTERVAL_KEY;
 
 /**
@@ -32,10 +33,13 @@ import static org.radarcns.phone.PhoneUsageProvider.PHONE_USAGE_INTERVAL_KEY;
  */
 public class PhoneUsageService extends DeviceService<BaseDeviceState> {
     private long usageEventInterval;
+    private long activeUsageEventInterval;
 
     @Override
     protected PhoneUsageManager createDeviceManager() {
-        return new PhoneUsageManager(this, usageEventInterval, TimeUnit.SECONDS);
+        PhoneUsageManager manager = new PhoneUsageManager(this, usageEventInterval, TimeUnit.SECONDS);
+        manager.setActiveUsageEventUpdateRate(activeUsageEventInterval, TimeUnit.SECONDS);
+        return manager;
     }
 
     @NonNull
@@ -48,10 +52,12 @@ public class PhoneUsageService extends DeviceService<BaseDeviceState> {
     protected void onInvocation(@NonNull Bundle bundle) {
         super.onInvocation(bundle);
         usageEventInterval = bundle.getLong(PHONE_USAGE_INTERVAL_KEY);
+        activeUsageEventInterval = bundle.getLong(PHONE_USAGE_ACTIVE_INTERVAL_KEY);
 
         PhoneUsageManager manager = (PhoneUsageManager) getDeviceManager();
         if (manager != null) {
             manager.setUsageEventUpdateRate(usageEventInterval, TimeUnit.SECONDS);
+            manager.setActiveUsageEventUpdateRate(activeUsageEventInterval, TimeUnit.SECONDS);
         }
     }
 
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+/**
+ * Scan interval that backs off while scan results are stable. Each scan whose device count is
+ * within 20% (and at least one device) of the previous count doubles the interval, up to a
+ * maximum. Any larger change resets the interval to its base value.
+ */
+class AdaptiveScanInterval {
+    private static final float STABLE_FRACTION = 0.2f;
+
+    private long baseInterval;
+    private long maxInterval;
+    private long interval;
+    private int lastCount;
+
+    AdaptiveScanInterval(long baseInterval) {
+        this.baseInterval = baseInterval;
+        this.maxInterval = baseInterval;
+        this.interval = baseInterval;
+        this.lastCount = -1;
+    }
+
+    /**
+     * Set the interval bounds. If the maximum is not larger than the base interval, the interval
+     * stays fixed.
+     */
+    synchronized void setBounds(long baseInterval, long maxInterval) {
+        this.baseInterval = baseInterval;
+        this.maxInterval = Math.max(baseInterval, maxInterval);
+        this.interval = Math.min(Math.max(interval, this.baseInterval), this.maxInterval);
+    }
+
+    /**
+     * Update the interval with the device count of a scan.
+     * @return next scan interval
+     */
+    synchronized long update(int count) {
+        if (lastCount >= 0 && Math.abs(count - lastCount)
+                <= Math.max(1, Math.round(STABLE_FRACTION * lastCount))) {
+            interval = Math.min(interval * 2, maxInterval);
+        } else {
+            interval = baseInterval;
+        }
+        lastCount = count;
+        return interval;
+    }
+
+    synchronized long getInterval() {
+        return interval;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Location update policy that maps the battery level to location update intervals with a
+ * piecewise linear curve. Between two points of the curve, the update rate (the inverse of the
+ * interval) is interpolated linearly, so that data density changes gradually with the battery
+ * level. An interval of 0 disables that provider and counts as a rate of 0, so a provider that
+ * is disabled at one point of a segment is phased in or out gradually over that segment. When
+ * the phone is plugged in, the intervals of the highest point are used.
+ *
+ * <p>To prevent frequent reconfiguration, the intervals are only recomputed when the battery level
+ * changed by at least the hysteresis since the last computation, or when the phone was plugged in
+ * or unplugged.
+ */
+class BatteryCurvePolicy implements LocationUpdatePolicy {
+    private final float[] levels;
+    private final long[] gpsIntervals;
+    private final long[] networkIntervals;
+    private final float hysteresis;
+
+    private float appliedLevel;
+    private boolean appliedPlugged;
+    private long gpsInterval;
+    private long networkInterval;
+
+    private BatteryCurvePolicy(float[] levels, long[] gpsIntervals, long[] networkIntervals,
+            float hysteresis) {
+        this.levels = levels;
+        this.gpsIntervals = gpsIntervals;
+        this.networkIntervals = networkIntervals;
+        this.hysteresis = hysteresis;
+        this.appliedLevel = Float.NaN;
+        this.gpsInterval = -1L;
+        this.networkInterval = -1L;
+    }
+
+    /**
+     * Parse a battery curve. The curve is a comma-separated list of points, each formatted as
+     * {@code level:gpsInterval:networkInterval}, with the battery level between 0 and 1 in
+     * ascending order and intervals in seconds. For example,
+     * {@code 0.15:0:0,0.3:3600:1200,1:900:300}.
+     * @param curve curve specification
+     * @param hysteresis minimum battery level change before intervals are recomputed
+     * @return parsed policy
+     * @throws IllegalArgumentException if the curve is malformed
+     */
+    @NonNull
+    static BatteryCurvePolicy parse(@NonNull String curve, float hysteresis) {
+        String[] points = curve.split(",");
+        float[] levels = new float[points.length];
+        long[] gpsIntervals = new long[points.length];
+        long[] networkIntervals = new long[points.length];
+
+        for (int i = 0; i < points.length; i++) {
+            String[] values = points[i].trim().split(":");
+            if (values.length != 3) {
+                throw new IllegalArgumentException("Battery curve point '" + points[i]
+                        + "' does not have format level:gpsInterval:networkInterval");
+            }
+            try {
+                levels[i] = Float.parseFloat(values[0].trim());
+                gpsIntervals[i] = Long.parseLong(values[1].trim());
+                networkIntervals[i] = Long.parseLong(values[2].trim());
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Battery curve point '" + points[i]
+                        + "' is not numeric", ex);
+            }
+            if (levels[i] < 0f || levels[i] > 1f) {
+                throw new IllegalArgumentException("Battery curve level " + levels[i]
+                        + " is not between 0 and 1");
+            }
+            if (i > 0 && levels[i] <= levels[i - 1]) {
+                throw new IllegalArgumentException("Battery curve levels are not ascending");
+            }
+            if (gpsIntervals[i] < 0 || networkIntervals[i] < 0) {
+                throw new IllegalArgumentException("Battery curve intervals may not be negative");
+            }
+        }
+
+        return new BatteryCurvePolicy(levels, gpsIntervals, networkIntervals,
+                Math.max(hysteresis, 0f));
+    }
+
+    @Override
+    public boolean update(float batteryLevel, boolean isPlugged) {
+        if (!Float.isNaN(appliedLevel) && isPlugged == appliedPlugged
+                && Math.abs(batteryLevel - appliedLevel) < hysteresis) {
+            return false;
+        }
+        appliedLevel = batteryLevel;
+        appliedPlugged = isPlugged;
+
+        long newGpsInterval;
+        long newNetworkInterval;
+        if (isPlugged) {
+            newGpsInterval = gpsIntervals[gpsIntervals.length - 1];
+            newNetworkInterval = networkIntervals[networkIntervals.length - 1];
+        } else {
+            newGpsInterval = interpolate(gpsIntervals, batteryLevel);
+            newNetworkInterval = interpolate(networkIntervals, batteryLevel);
+        }
+
+        if (newGpsInterval == gpsInterval && newNetworkInterval == networkInterval) {
+            return false;
+        }
+        gpsInterval = newGpsInterval;
+        networkInterval = newNetworkInterval;
+        return true;
+    }
+
+    private long interpolate(long[] intervals, float level) {
+        if (level <= levels[0]) {
+            return intervals[0];
+        }
+        int last = levels.length - 1;
+        if (level >= levels[last]) {
+            return intervals[last];
+        }
+        int i = 0;
+        while (levels[i + 1] <= level) {
+            i++;
+        }
+        double fraction = (level - levels[i]) / (double) (levels[i + 1] - levels[i]);
+        double rate = (1d - fraction) * rateOf(intervals[i]) + fraction * rateOf(intervals[i + 1]);
+        return rate > 0d ? Math.round(1d / rate) : 0L;
+    }
+
+    /** Update rate of an interval, with a rate of 0 for a disabled provider. */
+    private static double rateOf(long interval) {
+        return interval > 0 ? 1d / interval : 0d;
+    }
+
+    @Override
+    public long getGpsInterval() {
+        return Math.max(gpsInterval, 0L);
+    }
+
+    @Override
+    public long getNetworkInterval() {
+        return Math.max(networkInterval, 0L);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BatteryCurvePolicy other = (BatteryCurvePolicy) o;
+        return hysteresis == other.hysteresis
+                && Arrays.equals(levels, other.levels)
+                && Arrays.equals(gpsIntervals, other.gpsIntervals)
+                && Arrays.equals(networkIntervals, other.networkIntervals);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(levels);
+        result = 31 * result + Arrays.hashCode(gpsIntervals);
+        result = 31 * result + Arrays.hashCode(networkIntervals);
+        result = 31 * result + Float.floatToIntBits(hysteresis);
+        return result;
+    }
+}
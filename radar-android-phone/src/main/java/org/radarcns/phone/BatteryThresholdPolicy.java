@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+/**
+ * Location update policy with a normal and a reduced interval, and a battery level below which
+ * location updates are turned off.
+ */
+class BatteryThresholdPolicy implements LocationUpdatePolicy {
+    private static final int FREQUENCY_UNSET = 0;
+    private static final int FREQUENCY_OFF = 1;
+    private static final int FREQUENCY_REDUCED = 2;
+    private static final int FREQUENCY_NORMAL = 3;
+
+    private final float batteryLevelMinimum;
+    private final float batteryLevelReduced;
+    private final long gpsInterval;
+    private final long gpsIntervalReduced;
+    private final long networkInterval;
+    private final long networkIntervalReduced;
+    private int frequency;
+
+    BatteryThresholdPolicy(float batteryLevelMinimum, float batteryLevelReduced,
+            long gpsInterval, long gpsIntervalReduced,
+            long networkInterval, long networkIntervalReduced) {
+        this.batteryLevelMinimum = batteryLevelMinimum;
+        this.batteryLevelReduced = batteryLevelReduced;
+        this.gpsInterval = gpsInterval;
+        this.gpsIntervalReduced = gpsIntervalReduced;
+        this.networkInterval = networkInterval;
+        this.networkIntervalReduced = networkIntervalReduced;
+        this.frequency = FREQUENCY_UNSET;
+    }
+
+    @Override
+    public boolean update(float batteryLevel, boolean isPlugged) {
+        int newFrequency;
+        if (isPlugged || batteryLevel >= batteryLevelReduced) {
+            newFrequency = FREQUENCY_NORMAL;
+        } else if (batteryLevel >= batteryLevelMinimum) {
+            newFrequency = FREQUENCY_REDUCED;
+        } else {
+            newFrequency = FREQUENCY_OFF;
+        }
+
+        if (frequency == newFrequency) {
+            return false;
+        }
+        frequency = newFrequency;
+        return true;
+    }
+
+    @Override
+    public long getGpsInterval() {
+        switch (frequency) {
+            case FREQUENCY_NORMAL:
+                return gpsInterval;
+            case FREQUENCY_REDUCED:
+                return gpsIntervalReduced;
+            default:
+                return 0L;
+        }
+    }
+
+    @Override
+    public long getNetworkInterval() {
+        switch (frequency) {
+            case FREQUENCY_NORMAL:
+                return networkInterval;
+            case FREQUENCY_REDUCED:
+                return networkIntervalReduced;
+            default:
+                return 0L;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        BatteryThresholdPolicy other = (BatteryThresholdPolicy) o;
+        return batteryLevelMinimum == other.batteryLevelMinimum
+                && batteryLevelReduced == other.batteryLevelReduced
+                && gpsInterval == other.gpsInterval
+                && gpsIntervalReduced == other.gpsIntervalReduced
+                && networkInterval == other.networkInterval
+                && networkIntervalReduced == other.networkIntervalReduced;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(batteryLevelMinimum);
+        result = 31 * result + Float.floatToIntBits(batteryLevelReduced);
+        result = 31 * result + (int) (gpsInterval ^ (gpsInterval >>> 32));
+        result = 31 * result + (int) (gpsIntervalReduced ^ (gpsIntervalReduced >>> 32));
+        result = 31 * result + (int) (networkInterval ^ (networkInterval >>> 32));
+        result = 31 * result + (int) (networkIntervalReduced ^ (networkIntervalReduced >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import android.support.annotation.NonNull;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Counts distinct Bluetooth devices in a scan without storing their addresses. Addresses are
+ * hashed with a random salt that is only kept in memory, and devices are counted by hash in a
+ * fixed-size open-addressing table of {@value #CAPACITY} hashes, 8 KB in total.
+ *
+ * <p>When a scan finds more than {@value #MAX_SIZE} distinct devices, further devices are counted
+ * without deduplicating them.
+ */
+class BluetoothDeviceCounter {
+    private static final int CAPACITY = 1024;
+    /** Maximum number of stored hashes, to keep probe sequences short. */
+    private static final int MAX_SIZE = CAPACITY * 3 / 4;
+    /** Marks an empty slot. Hashes with this value are remapped. */
+    private static final long EMPTY = 0L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long salt;
+    private final long[] scanHashes;
+    private int size;
+    private int overflowCount;
+
+    BluetoothDeviceCounter() {
+        salt = new SecureRandom().nextLong();
+        scanHashes = new long[CAPACITY];
+        size = 0;
+        overflowCount = 0;
+    }
+
+    /** Salted 64-bit hash of a device address, with a final mixing step. */
+    private long hash(@NonNull String address) {
+        long hash = salt;
+        for (int i = 0; i < address.length(); i++) {
+            hash = (hash ^ address.charAt(i)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != EMPTY ? hash : 1L;
+    }
+
+    /** Start counting a new scan. */
+    synchronized void startScan() {
+        Arrays.fill(scanHashes, EMPTY);
+        size = 0;
+        overflowCount = 0;
+    }
+
+    /**
+     * Add a device seen in the current scan.
+     * @return whether the device was not seen before in the current scan.
+     */
+    synchronized boolean add(@NonNull String address) {
+        long hash = hash(address);
+        int mask = CAPACITY - 1;
+        // linear probing from the low bits of the hash
+        for (int i = (int) hash & mask; ; i = (i + 1) & mask) {
+            if (scanHashes[i] == hash) {
+                return false;
+            } else if (scanHashes[i] == EMPTY) {
+                if (size < MAX_SIZE) {
+                    scanHashes[i] = hash;
+                    size++;
+                } else {
+                    overflowCount++;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finish the current scan.
+     * @return number of distinct devices in the scan.
+     */
+    synchronized int finishScan() {
+        int count = size + overflowCount;
+        startScan();
+        return count;
+    }
+}
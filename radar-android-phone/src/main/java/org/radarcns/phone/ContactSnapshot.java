@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Snapshot of a contact list as a sorted array of distinct 64-bit keys, stored in a binary file.
+ * Differences between snapshots are computed by merging sorted arrays.
+ */
+final class ContactSnapshot {
+    static final long[] EMPTY = new long[0];
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ContactSnapshot() {
+        // utility class
+    }
+
+    /** 64-bit FNV-1a hash of a key. */
+    static long hash(@NonNull CharSequence key) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Count the values that are not in a reference snapshot.
+     * @param values sorted distinct values
+     * @param reference sorted distinct reference values
+     * @return number of values missing from the reference
+     */
+    static int countMissing(@NonNull long[] values, @NonNull long[] reference) {
+        int missing = 0;
+        int j = 0;
+        for (long value : values) {
+            while (j < reference.length && reference[j] < value) {
+                j++;
+            }
+            if (j == reference.length || reference[j] != value) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Add and remove values from a snapshot. Removal takes precedence over addition.
+     * @param values sorted distinct values
+     * @param added sorted distinct values to add
+     * @param removed sorted distinct values to remove
+     * @return new sorted distinct values
+     */
+    @NonNull
+    static long[] update(@NonNull long[] values, @NonNull long[] added, @NonNull long[] removed) {
+        long[] result = new long[values.length + added.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < values.length || j < added.length) {
+            long next;
+            if (j == added.length || (i < values.length && values[i] < added[j])) {
+                next = values[i++];
+            } else if (i == values.length || added[j] < values[i]) {
+                next = added[j++];
+            } else {
+                next = values[i++];
+                j++;
+            }
+            while (k < removed.length && removed[k] < next) {
+                k++;
+            }
+            if (k == removed.length || removed[k] != next) {
+                result[size++] = next;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Read a snapshot.
+     * @return sorted distinct values or {@code null} if no snapshot was stored.
+     * @throws IOException if the snapshot cannot be read
+     */
+    @Nullable
+    static long[] read(@NonNull File file) throws IOException {
+        AtomicFile atomicFile = new AtomicFile(file);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(atomicFile.openRead()))) {
+            int size = in.readInt();
+            // check the size before allocating, in case the file is truncated or corrupt
+            long length = atomicFile.getBaseFile().length();
+            if (size < 0 || length != 4L + 8L * size) {
+                throw new IOException("Invalid contact snapshot size " + size
+                        + " for file length " + length);
+            }
+            long[] values = new long[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = in.readLong();
+            }
+            return values;
+        } catch (FileNotFoundException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Replace a stored snapshot.
+     * @param values sorted distinct values
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(@NonNull File file, @NonNull long[] values) throws IOException {
+        AtomicFile atomicFile = new AtomicFile(file);
+        FileOutputStream fileOut = atomicFile.startWrite();
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            out.writeInt(values.length);
+            for (long value : values) {
+                out.writeLong(value);
+            }
+            out.flush();
+            atomicFile.finishWrite(fileOut);
+        } catch (IOException ex) {
+            atomicFile.failWrite(fileOut);
+            throw ex;
+        }
+    }
+
+    /** Collects values into a sorted distinct array. */
+    static final class Builder {
+        private long[] values;
+        private int size;
+
+        Builder(int capacity) {
+            values = new long[Math.max(capacity, 16)];
+            size = 0;
+        }
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        @NonNull
+        long[] build() {
+            Arrays.sort(values, 0, size);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || values[distinct - 1] != values[i]) {
+                    values[distinct++] = values[i];
+                }
+            }
+            return Arrays.copyOf(values, distinct);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import org.radarcns.passive.phone.LocationProvider;
+
+/**
+ * Fixed-size columnar buffer of relative locations. Values are kept in primitive arrays, missing
+ * values are stored as NaN. This class is not thread-safe, it should only be accessed from a
+ * single thread.
+ */
+class LocationBuffer {
+    private static final LocationProvider[] PROVIDERS = LocationProvider.values();
+
+    private final byte[] providers;
+    private final double[] times;
+    private final double[] timesReceived;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] altitudes;
+    private final float[] accuracies;
+    private final float[] speeds;
+    private final float[] bearings;
+    private int size;
+
+    LocationBuffer(int capacity) {
+        providers = new byte[capacity];
+        times = new double[capacity];
+        timesReceived = new double[capacity];
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        altitudes = new float[capacity];
+        accuracies = new float[capacity];
+        speeds = new float[capacity];
+        bearings = new float[capacity];
+        size = 0;
+    }
+
+    /**
+     * Add a location to the buffer.
+     * @return whether the buffer is full after adding the location.
+     * @throws IllegalStateException if the buffer was already full.
+     */
+    boolean add(LocationProvider provider, double time, double timeReceived, double latitude,
+            double longitude, float altitude, float accuracy, float speed, float bearing) {
+        if (size == providers.length) {
+            throw new IllegalStateException("Location buffer is full");
+        }
+        providers[size] = (byte) provider.ordinal();
+        times[size] = time;
+        timesReceived[size] = timeReceived;
+        latitudes[size] = latitude;
+        longitudes[size] = longitude;
+        altitudes[size] = altitude;
+        accuracies[size] = accuracy;
+        speeds[size] = speed;
+        bearings[size] = bearing;
+        size++;
+        return size == providers.length;
+    }
+
+    /** Pass all buffered locations to given reader, in insertion order, and clear the buffer. */
+    void drain(Reader reader) {
+        for (int i = 0; i < size; i++) {
+            reader.read(PROVIDERS[providers[i]], times[i], timesReceived[i], latitudes[i],
+                    longitudes[i], altitudes[i], accuracies[i], speeds[i], bearings[i]);
+        }
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int capacity() {
+        return providers.length;
+    }
+
+    /** Reader of a single buffered location. */
+    interface Reader {
+        void read(LocationProvider provider, double time, double timeReceived, double latitude,
+                double longitude, float altitude, float accuracy, float speed, float bearing);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import android.location.Location;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission filter for location fixes. It suppresses fixes that were already seen recently,
+ * for example when the last known location is re-read after an update rate change, and it
+ * rejects fixes that are too inaccurate or too old.
+ */
+class LocationFixFilter {
+    private static final int CACHE_SIZE = 8;
+
+    private final String[] providers = new String[CACHE_SIZE];
+    private final long[] times = new long[CACHE_SIZE];
+    private final double[] latitudes = new double[CACHE_SIZE];
+    private final double[] longitudes = new double[CACHE_SIZE];
+    private int next;
+
+    private float maximumAccuracy;
+    private long maximumAgeNanos;
+
+    private long duplicateCount;
+    private long inaccurateCount;
+    private long outdatedCount;
+
+    /**
+     * Configure the quality requirements of a fix.
+     * @param maximumAccuracy maximum accuracy radius in meters, or a non-positive value to
+     *                        accept any accuracy.
+     * @param maximumAge maximum age of a fix, or a non-positive value to accept any age.
+     * @param unit unit of the maximum age
+     */
+    synchronized void configure(float maximumAccuracy, long maximumAge, TimeUnit unit) {
+        this.maximumAccuracy = maximumAccuracy;
+        this.maximumAgeNanos = unit.toNanos(maximumAge);
+    }
+
+    /**
+     * Whether given fix should be processed. An accepted fix is remembered so that it will not
+     * be accepted a second time.
+     */
+    synchronized boolean accept(@NonNull Location location) {
+        if (maximumAccuracy > 0 && location.hasAccuracy()
+                && location.getAccuracy() > maximumAccuracy) {
+            inaccurateCount++;
+            return false;
+        }
+        if (maximumAgeNanos > 0 && SystemClock.elapsedRealtimeNanos()
+                - location.getElapsedRealtimeNanos() > maximumAgeNanos) {
+            outdatedCount++;
+            return false;
+        }
+
+        String provider = location.getProvider();
+        long time = location.getTime();
+        double latitude = location.getLatitude();
+        double longitude = location.getLongitude();
+
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            if (times[i] == time
+                    && Double.compare(latitudes[i], latitude) == 0
+                    && Double.compare(longitudes[i], longitude) == 0
+                    && providers[i] != null
+                    && providers[i].equals(provider)) {
+                duplicateCount++;
+                return false;
+            }
+        }
+
+        providers[next] = provider;
+        times[next] = time;
+        latitudes[next] = latitude;
+        longitudes[next] = longitude;
+        next = (next + 1) % CACHE_SIZE;
+        return true;
+    }
+
+    /** Number of fixes that were suppressed because they were already processed. */
+    synchronized long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    /** Number of fixes that were rejected because of insufficient accuracy. */
+    synchronized long getInaccurateCount() {
+        return inaccurateCount;
+    }
+
+    /** Number of fixes that were rejected because they were too old. */
+    synchronized long getOutdatedCount() {
+        return outdatedCount;
+    }
+}
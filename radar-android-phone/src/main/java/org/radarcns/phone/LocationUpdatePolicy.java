@@ -0,0 +1,37 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+/**
+ * Policy that determines location update intervals from the battery state. Implementations
+ * are stateful and not thread-safe.
+ */
+interface LocationUpdatePolicy {
+    /**
+     * Update the policy with the current battery state.
+     * @param batteryLevel battery level between 0 and 1
+     * @param isPlugged whether the phone is plugged in
+     * @return whether the location update intervals changed
+     */
+    boolean update(float batteryLevel, boolean isPlugged);
+
+    /** Current GPS interval in seconds, or 0 if GPS should not be used. */
+    long getGpsInterval();
+
+    /** Current network location interval in seconds, or 0 if it should not be used. */
+    long getNetworkInterval();
+}
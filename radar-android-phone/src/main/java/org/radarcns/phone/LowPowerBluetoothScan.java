@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.os.Handler;
+import android.support.annotation.NonNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Single Bluetooth Low Energy scan in low-power mode. If the controller supports it, results are
+ * batched in hardware and only delivered a few times per scan, so the application processor can
+ * sleep during the scan. Devices are counted once per scan, however often they advertise, by a
+ * {@link BluetoothDeviceCounter}.
+ */
+class LowPowerBluetoothScan {
+    private static final Logger logger = LoggerFactory.getLogger(LowPowerBluetoothScan.class);
+
+    /** Time to wait for batched results to be delivered after they were flushed. */
+    private static final long FLUSH_GRACE_MILLIS = 1000L;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_SCANNING = 1;
+    private static final int STATE_FLUSHING = 2;
+
+    private final BluetoothAdapter bluetoothAdapter;
+    private final Handler handler;
+    private final long durationMillis;
+    private final Listener listener;
+    private final BluetoothDeviceCounter counter;
+    private final ScanCallback callback;
+    private final Runnable finishRunnable;
+    private final Runnable stopRunnable;
+    private BluetoothLeScanner scanner;
+    private int state;
+
+    /**
+     * Create a scan.
+     * @param bluetoothAdapter enabled adapter to scan with
+     * @param handler handler to end the scan on
+     * @param durationMillis scan duration
+     * @param counter counter for devices, on which the scan must already have been started
+     * @param listener listener for the scan result
+     */
+    LowPowerBluetoothScan(@NonNull BluetoothAdapter bluetoothAdapter, @NonNull Handler handler,
+            long durationMillis, @NonNull BluetoothDeviceCounter counter,
+            @NonNull Listener listener) {
+        this.bluetoothAdapter = bluetoothAdapter;
+        this.handler = handler;
+        this.durationMillis = durationMillis;
+        this.listener = listener;
+        this.counter = counter;
+        this.state = STATE_IDLE;
+        this.finishRunnable = this::finish;
+        this.stopRunnable = this::stop;
+        this.callback = new ScanCallback() {
+            @Override
+            public void onScanResult(int callbackType, ScanResult result) {
+                addResult(result);
+            }
+
+            @Override
+            public void onBatchScanResults(List<ScanResult> results) {
+                for (ScanResult result : results) {
+                    addResult(result);
+                }
+            }
+
+            @Override
+            public void onScanFailed(int errorCode) {
+                logger.warn("Bluetooth low energy scan failed with error code {}", errorCode);
+                if (cancel()) {
+                    listener.onScanFailed();
+                }
+            }
+        };
+    }
+
+    /**
+     * Start scanning.
+     * @return whether the scan was started
+     */
+    synchronized boolean start() {
+        scanner = bluetoothAdapter.getBluetoothLeScanner();
+        if (scanner == null) {
+            logger.warn("Bluetooth low energy scanner is not available.");
+            return false;
+        }
+
+        ScanSettings.Builder settings = new ScanSettings.Builder()
+                .setScanMode(ScanSettings.SCAN_MODE_LOW_POWER);
+        if (bluetoothAdapter.isOffloadedScanBatchingSupported()) {
+            // deliver batches well before the scan ends, so a batch does not arrive after it
+            settings.setReportDelay(durationMillis / 2);
+        }
+        state = STATE_SCANNING;
+        scanner.startScan(null, settings.build(), callback);
+        handler.postDelayed(finishRunnable, durationMillis);
+        return true;
+    }
+
+    private synchronized void addResult(ScanResult result) {
+        if (state != STATE_IDLE) {
+            counter.add(result.getDevice().getAddress());
+        }
+    }
+
+    /**
+     * Request any results that are still batched in the controller. They are delivered
+     * asynchronously, so the scan is only stopped after a grace period.
+     */
+    private synchronized void finish() {
+        if (state != STATE_SCANNING) {
+            return;
+        }
+        state = STATE_FLUSHING;
+        if (bluetoothAdapter.isEnabled()) {
+            scanner.flushPendingScanResults(callback);
+        }
+        handler.postDelayed(stopRunnable, FLUSH_GRACE_MILLIS);
+    }
+
+    private void stop() {
+        int numberOfDevices;
+        synchronized (this) {
+            if (state != STATE_FLUSHING) {
+                return;
+            }
+            if (bluetoothAdapter.isEnabled()) {
+                scanner.stopScan(callback);
+            }
+            state = STATE_IDLE;
+            numberOfDevices = counter.finishScan();
+        }
+        listener.onScanFinished(numberOfDevices);
+    }
+
+    /**
+     * Stop scanning without reporting a result.
+     * @return whether the scan was still running
+     */
+    synchronized boolean cancel() {
+        if (state == STATE_IDLE) {
+            return false;
+        }
+        handler.removeCallbacks(finishRunnable);
+        handler.removeCallbacks(stopRunnable);
+        if (bluetoothAdapter.isEnabled()) {
+            scanner.stopScan(callback);
+        }
+        state = STATE_IDLE;
+        counter.finishScan();
+        return true;
+    }
+
+    interface Listener {
+        /**
+         * Scan finished.
+         * @param numberOfDevices number of distinct devices seen during the scan.
+         */
+        void onScanFinished(int numberOfDevices);
+
+        /** Scan failed and was stopped without a result. */
+        void onScanFailed();
+    }
+}
@@ -22,6 +22,8 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 
 import org.radarcns.android.device.AbstractDeviceManager;
@@ -43,49 +45,129 @@ public class PhoneBluetoothManager extends AbstractDeviceManager<PhoneBluetoothS
 
     private static final int SCAN_DEVICES_REQUEST_CODE = 3248902;
     private static final String ACTION_SCAN_DEVICES = "org.radarcns.phone.PhoneBluetoothManager.ACTION_SCAN_DEVICES";
+    static final String SCAN_MODE_CLASSIC = "classic";
+    static final String SCAN_MODE_LOW_POWER = "low_power";
+
     private final OfflineProcessor processor;
     private final AvroTopic<ObservationKey, PhoneBluetoothDevices> bluetoothDevicesTopic;
+    private final Handler scanHandler;
+    private final BluetoothDeviceCounter deviceCounter;
+    private final AdaptiveScanInterval scanInterval;
+    private final long wakeupSlackMillis;
+    private volatile WakeupCoordinator.Job scanJob;
+    private final Runnable adapterStateTimeout;
+    private volatile long discoveryTimeout;
+    private volatile boolean isAdapterEnabledByScan;
+    // scan state, only accessed from the main thread
     private BroadcastReceiver bluetoothBroadcastReceiver;
+    private BroadcastReceiver adapterStateReceiver;
+    private LowPowerBluetoothScan lowPowerScan;
+    private boolean isScanStopped;
+    private volatile boolean isLowPowerMode;
+    private volatile long lowPowerScanDuration;
+    private volatile boolean enableAdapterForLowPowerScan;
 
     public PhoneBluetoothManager(PhoneBluetoothService service) {
         super(service);
 
-        processor = new OfflineProcessor.Builder(service, this)
+        long wakeupSlack = service.getWakeupSlack();
+        wakeupSlackMillis = wakeupSlack >= 0 ? TimeUnit.SECONDS.toMillis(wakeupSlack) : -1L;
+        // when coordinated, scans run in the shared wakeups and the scan processor only runs them
+        // as a fallback
+        processor = new OfflineProcessor.Builder(service, this::runFromProcessor)
                 .requestIdentifier(SCAN_DEVICES_REQUEST_CODE, ACTION_SCAN_DEVICES)
-                .interval(service.getCheckInterval(), TimeUnit.SECONDS)
-                .wake(true)
+                .interval(fallbackInterval(TimeUnit.SECONDS.toMillis(service.getCheckInterval())),
+                        TimeUnit.MILLISECONDS)
+                .wake(wakeupSlackMillis < 0)
                 .build();
 
         bluetoothDevicesTopic = createTopic("android_phone_bluetooth_devices", PhoneBluetoothDevices.class);
+        scanHandler = new Handler(Looper.getMainLooper());
+        deviceCounter = new BluetoothDeviceCounter();
+        isLowPowerMode = false;
+        lowPowerScanDuration = TimeUnit.SECONDS.toMillis(30);
+        enableAdapterForLowPowerScan = false;
+        scanInterval = new AdaptiveScanInterval(TimeUnit.SECONDS.toMillis(service.getCheckInterval()));
+        discoveryTimeout = TimeUnit.SECONDS.toMillis(30);
+        isAdapterEnabledByScan = false;
+        isScanStopped = false;
+        adapterStateTimeout = () -> {
+            if (adapterStateReceiver != null) {
+                logger.warn("Bluetooth did not turn on within {} ms, skipping Bluetooth scan",
+                        discoveryTimeout);
+                getService().unregisterReceiver(adapterStateReceiver);
+                adapterStateReceiver = null;
+                restoreAdapter();
+            }
+        };
     }
 
     @Override
     public void start(@NonNull Set<String> set) {
         updateStatus(DeviceStatusListener.Status.READY);
         processor.start();
+        if (wakeupSlackMillis >= 0) {
+            scanJob = WakeupCoordinator.register(getService(), "Bluetooth scan",
+                    scanInterval.getInterval(), wakeupSlackMillis, TimeUnit.MILLISECONDS, this,
+                    processor);
+        }
         updateStatus(DeviceStatusListener.Status.CONNECTED);
     }
 
+    private void runFromProcessor() {
+        WakeupCoordinator.Job job = scanJob;
+        if (job != null) {
+            job.runFromProcessor();
+        } else {
+            run();
+        }
+    }
+
+    /**
+     * Start a scan. All scan state is owned by the main thread, so the scan is started from
+     * there.
+     */
     @Override
     public void run() {
+        scanHandler.post(this::startScan);
+    }
+
+    private void startScan() {
+        if (isScanStopped) {
+            return;
+        }
         final BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
         if (bluetoothAdapter == null) {
             logger.error("Bluetooth is not available.");
             return;
         }
-        final boolean wasEnabled = bluetoothAdapter.isEnabled();
+        if (isLowPowerMode) {
+            startLowPowerScan(bluetoothAdapter);
+        } else {
+            startDiscovery(bluetoothAdapter);
+        }
+    }
 
-        if (!wasEnabled) {
-            bluetoothAdapter.enable();
+    private void startDiscovery(final BluetoothAdapter bluetoothAdapter) {
+        if (bluetoothBroadcastReceiver != null || adapterStateReceiver != null) {
+            logger.info("Bluetooth discovery is still running.");
+            return;
         }
+        if (bluetoothAdapter.isEnabled()) {
+            runDiscovery(bluetoothAdapter, true);
+        } else {
+            // discovery fails if it is started before the adapter is on
+            enableAdapter(bluetoothAdapter, () -> runDiscovery(bluetoothAdapter, false));
+        }
+    }
 
+    private void runDiscovery(final BluetoothAdapter bluetoothAdapter, final boolean wasEnabled) {
         IntentFilter filter = new IntentFilter();
         filter.addAction(BluetoothDevice.ACTION_FOUND);
         filter.addAction(BluetoothAdapter.ACTION_DISCOVERY_FINISHED);
 
-        bluetoothBroadcastReceiver = new BroadcastReceiver() {
-            private int numberOfDevices;
-
+        deviceCounter.startScan();
+        final BroadcastReceiver receiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 String action = intent.getAction();
@@ -94,46 +176,246 @@ public class PhoneBluetoothManager extends AbstractDeviceManager<PhoneBluetoothS
                 }
                 switch (action) {
                     case BluetoothDevice.ACTION_FOUND: {
-                        numberOfDevices++;
+                        // devices may be reported more than once per discovery
+                        BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
+                        if (device != null) {
+                            deviceCounter.add(device.getAddress());
+                        }
                         break;
                     }
 
                     case BluetoothAdapter.ACTION_DISCOVERY_FINISHED: {
-                        getService().unregisterReceiver(this);
-                        bluetoothBroadcastReceiver = null;
+                        finishDiscovery(this, bluetoothAdapter, wasEnabled, false);
+                        break;
+                    }
+                }
+            }
+        };
+        bluetoothBroadcastReceiver = receiver;
+
+        getService().registerReceiver(receiver, filter);
+        bluetoothAdapter.startDiscovery();
+        // ACTION_DISCOVERY_FINISHED may never arrive, for example if discovery failed to start
+        scanHandler.postDelayed(() -> finishDiscovery(receiver, bluetoothAdapter, wasEnabled, true),
+                discoveryTimeout);
+    }
+
+    /**
+     * Finish a discovery: unregister its receiver, restore the adapter state and send the result.
+     * This runs on the main thread, and only has an effect for the current discovery.
+     */
+    private void finishDiscovery(BroadcastReceiver receiver, BluetoothAdapter bluetoothAdapter,
+            boolean wasEnabled, boolean isTimedOut) {
+        if (bluetoothBroadcastReceiver != receiver) {
+            return;
+        }
+        getService().unregisterReceiver(receiver);
+        bluetoothBroadcastReceiver = null;
+
+        if (isTimedOut) {
+            bluetoothAdapter.cancelDiscovery();
+        }
+
+        int bondedDevices = bluetoothAdapter.getBondedDevices().size();
+        int numberOfDevices = deviceCounter.finishScan();
+
+        if (!wasEnabled) {
+            restoreAdapter();
+        }
+
+        if (isTimedOut) {
+            logger.warn("Bluetooth discovery did not finish within {} ms, discarding its result",
+                    discoveryTimeout);
+            return;
+        }
+
+        logger.info("Bluetooth discovery found {} distinct devices", numberOfDevices);
+        if (!isClosed()) {
+            double now = System.currentTimeMillis() / 1000.0;
+            send(bluetoothDevicesTopic,
+                    new PhoneBluetoothDevices(now, now, bondedDevices, numberOfDevices, wasEnabled));
+            updateScanInterval(numberOfDevices);
+        }
+    }
+
+    /** Turn Bluetooth off again if a scan turned it on. */
+    private void restoreAdapter() {
+        if (!isAdapterEnabledByScan) {
+            return;
+        }
+        isAdapterEnabledByScan = false;
+        BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        if (bluetoothAdapter != null) {
+            bluetoothAdapter.cancelDiscovery();
+            bluetoothAdapter.disable();
+        }
+    }
 
+    private void updateScanInterval(int numberOfDevices) {
+        long previousInterval = scanInterval.getInterval();
+        long interval = scanInterval.update(numberOfDevices);
+        if (interval != previousInterval) {
+            applyScanInterval(interval);
+            logger.info("Bluetooth scan interval set to {} seconds",
+                    TimeUnit.MILLISECONDS.toSeconds(interval));
+        }
+    }
+
+    private void startLowPowerScan(final BluetoothAdapter bluetoothAdapter) {
+        if (lowPowerScan != null || adapterStateReceiver != null) {
+            logger.info("Bluetooth low energy scan is still running.");
+            return;
+        }
+        if (bluetoothAdapter.isEnabled()) {
+            runLowPowerScan(bluetoothAdapter, true);
+            return;
+        }
+        if (!enableAdapterForLowPowerScan) {
+            logger.info("Bluetooth is disabled, skipping Bluetooth low energy scan.");
+            return;
+        }
+        // The scanner is only available once the adapter is turned on
+        enableAdapter(bluetoothAdapter, () -> runLowPowerScan(bluetoothAdapter, false));
+    }
+
+    /**
+     * Turn on the adapter and run a scan once it is on. If it does not turn on within the
+     * discovery timeout, the scan is skipped and the adapter is restored.
+     */
+    private void enableAdapter(final BluetoothAdapter bluetoothAdapter, final Runnable scan) {
+        adapterStateReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
+                if (state == BluetoothAdapter.STATE_ON && adapterStateReceiver == this) {
+                    scanHandler.removeCallbacks(adapterStateTimeout);
+                    getService().unregisterReceiver(this);
+                    adapterStateReceiver = null;
+                    scan.run();
+                }
+            }
+        };
+        getService().registerReceiver(adapterStateReceiver,
+                new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED), null, scanHandler);
+        isAdapterEnabledByScan = true;
+        bluetoothAdapter.enable();
+        scanHandler.postDelayed(adapterStateTimeout, discoveryTimeout);
+    }
+
+    private void runLowPowerScan(final BluetoothAdapter bluetoothAdapter, final boolean wasEnabled) {
+        deviceCounter.startScan();
+        lowPowerScan = new LowPowerBluetoothScan(bluetoothAdapter, scanHandler,
+                lowPowerScanDuration, deviceCounter, new LowPowerBluetoothScan.Listener() {
+                    @Override
+                    public void onScanFinished(int numberOfDevices) {
+                        lowPowerScan = null;
                         int bondedDevices = bluetoothAdapter.getBondedDevices().size();
 
                         if (!wasEnabled) {
-                            bluetoothAdapter.disable();
+                            restoreAdapter();
                         }
 
+                        logger.info("Bluetooth low energy scan found {} distinct devices",
+                                numberOfDevices);
                         if (!isClosed()) {
                             double now = System.currentTimeMillis() / 1000.0;
                             send(bluetoothDevicesTopic,
                                     new PhoneBluetoothDevices(now, now, bondedDevices, numberOfDevices, wasEnabled));
+                            updateScanInterval(numberOfDevices);
                         }
-                        break;
                     }
-                }
-            }
-        };
 
-        getService().registerReceiver(bluetoothBroadcastReceiver, filter);
-        bluetoothAdapter.startDiscovery();
+                    @Override
+                    public void onScanFailed() {
+                        lowPowerScan = null;
+                        if (!wasEnabled) {
+                            restoreAdapter();
+                        }
+                    }
+                });
+
+        if (!lowPowerScan.start()) {
+            lowPowerScan = null;
+            if (!wasEnabled) {
+                restoreAdapter();
+            }
+        }
     }
 
     @Override
     public void close() throws IOException {
+        WakeupCoordinator.Job job = scanJob;
+        if (job != null) {
+            job.unregister();
+            scanJob = null;
+        }
         processor.close();
+        scanHandler.removeCallbacksAndMessages(null);
+        if (Looper.myLooper() == scanHandler.getLooper()) {
+            stopScan();
+        } else {
+            scanHandler.post(this::stopScan);
+        }
+        super.close();
+    }
+
+    /** Stop any running scan and prevent new scans. This runs on the main thread. */
+    private void stopScan() {
+        isScanStopped = true;
         if (bluetoothBroadcastReceiver != null) {
             getService().unregisterReceiver(bluetoothBroadcastReceiver);
             bluetoothBroadcastReceiver = null;
         }
-        super.close();
+        if (adapterStateReceiver != null) {
+            getService().unregisterReceiver(adapterStateReceiver);
+            adapterStateReceiver = null;
+        }
+        if (lowPowerScan != null) {
+            lowPowerScan.cancel();
+            lowPowerScan = null;
+        }
+        restoreAdapter();
+    }
+
+    /**
+     * Set the scan mode.
+     * @param mode {@link #SCAN_MODE_CLASSIC} for classic Bluetooth discovery, which turns on the
+     *             adapter if needed, or {@link #SCAN_MODE_LOW_POWER} for a Bluetooth low energy
+     *             scan in low-power mode.
+     * @param duration duration of a low-power scan
+     * @param enableAdapter whether a low-power scan may turn on the adapter
+     */
+    void setScanMode(String mode, long duration, TimeUnit unit, boolean enableAdapter) {
+        isLowPowerMode = SCAN_MODE_LOW_POWER.equals(mode);
+        lowPowerScanDuration = unit.toMillis(duration);
+        enableAdapterForLowPowerScan = enableAdapter;
+    }
+
+    /**
+     * Set the scan interval. If the maximum interval is larger than the check interval, the
+     * interval is doubled after each scan with a stable device count, up to the maximum.
+     */
+    void setCheckInterval(long checkInterval, long maxCheckInterval, TimeUnit intervalUnit) {
+        scanInterval.setBounds(intervalUnit.toMillis(checkInterval), intervalUnit.toMillis(maxCheckInterval));
+        applyScanInterval(scanInterval.getInterval());
+    }
+
+    private void applyScanInterval(long intervalMillis) {
+        processor.setInterval(fallbackInterval(intervalMillis), TimeUnit.MILLISECONDS);
+        WakeupCoordinator.Job job = scanJob;
+        if (job != null) {
+            job.setInterval(intervalMillis, wakeupSlackMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long fallbackInterval(long intervalMillis) {
+        return wakeupSlackMillis >= 0
+                ? intervalMillis * WakeupCoordinator.FALLBACK_INTERVAL_FACTOR
+                : intervalMillis;
     }
 
-    void setCheckInterval(long checkInterval, TimeUnit intervalUnit) {
-        processor.setInterval(checkInterval, intervalUnit);
+    /** Maximum time to wait for a discovery to finish, or for Bluetooth to turn on. */
+    void setDiscoveryTimeout(long timeout, TimeUnit unit) {
+        discoveryTimeout = unit.toMillis(timeout);
     }
 }
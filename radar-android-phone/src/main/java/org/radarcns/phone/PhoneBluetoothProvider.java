@@ -30,12 +30,29 @@ import java.util.concurrent.TimeUnit;
 
 import static org.radarcns.phone.PhoneSensorProvider.DEVICE_MODEL;
 import static org.radarcns.phone.PhoneSensorProvider.DEVICE_PRODUCER;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_SECONDS;
 
 public class PhoneBluetoothProvider extends DeviceServiceProvider<BaseDeviceState> {
     private static final String PHONE_PREFIX = "org.radarcns.phone.";
     private static final String PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL = "bluetooth_devices_scan_interval_seconds";
     public static final String PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_KEY =  PHONE_PREFIX + PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL;
     public static final long BLUETOOTH_DEVICES_SCAN_INTERVAL_DEFAULT = TimeUnit.HOURS.toSeconds(1);
+    private static final String PHONE_BLUETOOTH_DEVICES_SCAN_MODE = "bluetooth_devices_scan_mode";
+    public static final String PHONE_BLUETOOTH_DEVICES_SCAN_MODE_KEY = PHONE_PREFIX + PHONE_BLUETOOTH_DEVICES_SCAN_MODE;
+    private static final String PHONE_BLUETOOTH_DEVICES_SCAN_MODE_DEFAULT = PhoneBluetoothManager.SCAN_MODE_CLASSIC;
+    private static final String PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION = "bluetooth_devices_low_power_scan_duration_seconds";
+    public static final String PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION_KEY = PHONE_PREFIX + PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION;
+    private static final long PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION_DEFAULT = 30L;
+    private static final String PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER = "bluetooth_devices_low_power_enable_adapter";
+    public static final String PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER_KEY = PHONE_PREFIX + PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER;
+    private static final boolean PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER_DEFAULT = false;
+    private static final String PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX = "bluetooth_devices_scan_interval_max_seconds";
+    public static final String PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX_KEY = PHONE_PREFIX + PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX;
+    private static final long PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX_DEFAULT = -1L;
+    private static final String PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT = "bluetooth_devices_discovery_timeout_seconds";
+    public static final String PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT_KEY = PHONE_PREFIX + PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT;
+    private static final long PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT_DEFAULT = 30L;
 
     @Override
     public String getDescription() {
@@ -75,6 +92,18 @@ public class PhoneBluetoothProvider extends DeviceServiceProvider<BaseDeviceStat
         RadarConfiguration config = getConfig();
         bundle.putLong(PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_KEY, config.getLong(
                 PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL, BLUETOOTH_DEVICES_SCAN_INTERVAL_DEFAULT));
+        bundle.putLong(PHONE_WAKEUP_SLACK_SECONDS, config.getLong(
+                PHONE_WAKEUP_SLACK_SECONDS, PHONE_WAKEUP_SLACK_DEFAULT_SECONDS));
+        bundle.putLong(PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX_KEY, config.getLong(
+                PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX, PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX_DEFAULT));
+        bundle.putLong(PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT_KEY, config.getLong(
+                PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT, PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT_DEFAULT));
+        bundle.putString(PHONE_BLUETOOTH_DEVICES_SCAN_MODE_KEY, config.getString(
+                PHONE_BLUETOOTH_DEVICES_SCAN_MODE, PHONE_BLUETOOTH_DEVICES_SCAN_MODE_DEFAULT));
+        bundle.putLong(PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION_KEY, config.getLong(
+                PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION, PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION_DEFAULT));
+        bundle.putBoolean(PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER_KEY, config.getBoolean(
+                PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER, PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER_DEFAULT));
     }
 
     @NonNull
@@ -25,14 +25,31 @@ import org.radarcns.android.device.DeviceService;
 import java.util.concurrent.TimeUnit;
 
 import static org.radarcns.phone.PhoneBluetoothProvider.BLUETOOTH_DEVICES_SCAN_INTERVAL_DEFAULT;
+import static org.radarcns.phone.PhoneBluetoothProvider.PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT_KEY;
+import static org.radarcns.phone.PhoneBluetoothProvider.PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER_KEY;
+import static org.radarcns.phone.PhoneBluetoothProvider.PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION_KEY;
 import static org.radarcns.phone.PhoneBluetoothProvider.PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_KEY;
+import static org.radarcns.phone.PhoneBluetoothProvider.PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX_KEY;
+import static org.radarcns.phone.PhoneBluetoothProvider.PHONE_BLUETOOTH_DEVICES_SCAN_MODE_KEY;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_SECONDS;
 
 public class PhoneBluetoothService extends DeviceService<BaseDeviceState> {
     private long checkInterval = BLUETOOTH_DEVICES_SCAN_INTERVAL_DEFAULT;
+    private String scanMode;
+    private long lowPowerScanDuration;
+    private boolean enableAdapter;
+    private long maxCheckInterval;
+    private long discoveryTimeout;
+    private long wakeupSlack = PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
 
     @Override
     protected PhoneBluetoothManager createDeviceManager() {
-        return new PhoneBluetoothManager(this);
+        PhoneBluetoothManager manager = new PhoneBluetoothManager(this);
+        manager.setScanMode(scanMode, lowPowerScanDuration, TimeUnit.SECONDS, enableAdapter);
+        manager.setCheckInterval(checkInterval, maxCheckInterval, TimeUnit.SECONDS);
+        manager.setDiscoveryTimeout(discoveryTimeout, TimeUnit.SECONDS);
+        return manager;
     }
 
     @NonNull
@@ -46,14 +63,27 @@ public class PhoneBluetoothService extends DeviceService<BaseDeviceState> {
         return checkInterval;
     }
 
+    /** Seconds that a scan may be early to share a wakeup, or negative if not coordinated. */
+    public long getWakeupSlack() {
+        return wakeupSlack;
+    }
+
     @Override
     protected void onInvocation(@NonNull Bundle bundle) {
         super.onInvocation(bundle);
         checkInterval = bundle.getLong(PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_KEY);
+        scanMode = bundle.getString(PHONE_BLUETOOTH_DEVICES_SCAN_MODE_KEY);
+        lowPowerScanDuration = bundle.getLong(PHONE_BLUETOOTH_DEVICES_LOW_POWER_SCAN_DURATION_KEY);
+        enableAdapter = bundle.getBoolean(PHONE_BLUETOOTH_DEVICES_ENABLE_ADAPTER_KEY);
+        maxCheckInterval = bundle.getLong(PHONE_BLUETOOTH_DEVICES_SCAN_INTERVAL_MAX_KEY);
+        discoveryTimeout = bundle.getLong(PHONE_BLUETOOTH_DEVICES_DISCOVERY_TIMEOUT_KEY);
+        wakeupSlack = bundle.getLong(PHONE_WAKEUP_SLACK_SECONDS);
 
         PhoneBluetoothManager manager = (PhoneBluetoothManager) getDeviceManager();
         if (manager != null) {
-            manager.setCheckInterval(checkInterval, TimeUnit.SECONDS);
+            manager.setCheckInterval(checkInterval, maxCheckInterval, TimeUnit.SECONDS);
+            manager.setScanMode(scanMode, lowPowerScanDuration, TimeUnit.SECONDS, enableAdapter);
+            manager.setDiscoveryTimeout(discoveryTimeout, TimeUnit.SECONDS);
         }
     }
 
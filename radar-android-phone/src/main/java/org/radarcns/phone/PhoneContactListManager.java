@@ -20,8 +20,11 @@ import android.content.ContentResolver;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.ContactsContract;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.radarcns.android.device.AbstractDeviceManager;
 import org.radarcns.android.device.BaseDeviceState;
@@ -29,14 +32,14 @@ import org.radarcns.android.device.DeviceStatusListener;
 import org.radarcns.android.util.OfflineProcessor;
 import org.radarcns.kafka.ObservationKey;
 import org.radarcns.passive.phone.PhoneContactList;
+import org.radarcns.phone.commons.DebouncedContentObserver;
 import org.radarcns.topic.AvroTopic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -46,14 +49,30 @@ public class PhoneContactListManager extends AbstractDeviceManager<PhoneContacts
     private static final int CONTACTS_LIST_UPDATE_REQUEST_CODE = 15765692;
     private static final String ACTION_UPDATE_CONTACTS_LIST = "org.radarcns.phone.PhoneContactListManager.ACTION_UPDATE_CONTACTS_LIST";
     private static final String[] LOOKUP_COLUMNS = {ContactsContract.Contacts.LOOKUP_KEY};
+    private static final String[] ID_COLUMNS = {ContactsContract.Contacts._ID};
+    private static final String[] DELETED_COLUMNS = {ContactsContract.DeletedContacts.CONTACT_ID};
     public static final String CONTACT_IDS = "contact_ids";
     public static final String CONTACT_LOOKUPS = "contact_lookups";
+    public static final String CONTACT_CHECKPOINT = "contact_checkpoint";
+    private static final String CONTACT_LOOKUPS_FILE = "contact_lookups.snapshot";
+    private static final String CONTACT_IDS_FILE = "contact_ids.snapshot";
 
     private final SharedPreferences preferences;
     private final OfflineProcessor processor;
     private final AvroTopic<ObservationKey, PhoneContactList> contactsTopic;
     private final ContentResolver db;
-    private Set<String> savedContactLookups;
+    private final File lookupSnapshotFile;
+    private final File idSnapshotFile;
+    private long[] savedContactLookups;
+    private long[] savedContactIds;
+    private volatile boolean isIncremental;
+    private final Handler observerHandler;
+    private DebouncedContentObserver contactsObserver;
+    private long contactsObserverDelay;
+    private boolean isStarted;
+    private final long wakeupSlackMillis;
+    private volatile WakeupCoordinator.Job checkJob;
+    private volatile long checkIntervalMillis;
 
     public PhoneContactListManager(PhoneContactsListService service) {
         super(service);
@@ -61,12 +80,22 @@ public class PhoneContactListManager extends AbstractDeviceManager<PhoneContacts
         preferences = service.getSharedPreferences(PhoneContactListManager.class.getName(), Context.MODE_PRIVATE);
         contactsTopic = createTopic("android_phone_contacts", PhoneContactList.class);
 
-        processor = new OfflineProcessor.Builder(service, this)
+        long wakeupSlack = service.getWakeupSlack();
+        wakeupSlackMillis = wakeupSlack >= 0 ? TimeUnit.SECONDS.toMillis(wakeupSlack) : -1L;
+        checkIntervalMillis = TimeUnit.SECONDS.toMillis(service.getCheckInterval());
+        processor = new OfflineProcessor.Builder(service, this::runFromProcessor)
                 .requestIdentifier(CONTACTS_LIST_UPDATE_REQUEST_CODE, ACTION_UPDATE_CONTACTS_LIST)
-                .interval(service.getCheckInterval(), TimeUnit.SECONDS)
+                .interval(fallbackInterval(checkIntervalMillis), TimeUnit.MILLISECONDS)
                 .wake(false)
                 .build();
         db = service.getContentResolver();
+        isIncremental = service.isIncremental();
+        lookupSnapshotFile = new File(service.getFilesDir(), CONTACT_LOOKUPS_FILE);
+        idSnapshotFile = new File(service.getFilesDir(), CONTACT_IDS_FILE);
+        observerHandler = new Handler(Looper.getMainLooper());
+        contactsObserverDelay = -1L;
+        isStarted = false;
+        setContactsObserverDelay(service.getObserverDelay(), TimeUnit.SECONDS);
     }
 
     @Override
@@ -78,21 +107,111 @@ public class PhoneContactListManager extends AbstractDeviceManager<PhoneContacts
                 .remove(CONTACT_IDS)
                 .apply();
 
-        savedContactLookups = preferences.getStringSet(CONTACT_LOOKUPS, Collections.emptySet());
+        savedContactLookups = loadSnapshot(lookupSnapshotFile, CONTACT_LOOKUPS);
+        savedContactIds = loadSnapshot(idSnapshotFile, null);
         processor.start();
+        if (wakeupSlackMillis >= 0) {
+            checkJob = WakeupCoordinator.register(getService(), "contact list check",
+                    checkIntervalMillis, wakeupSlackMillis, TimeUnit.MILLISECONDS, this,
+                    processor);
+        }
+
+        synchronized (this) {
+            isStarted = true;
+            if (contactsObserver != null) {
+                contactsObserver.register(db, ContactsContract.Contacts.CONTENT_URI);
+            }
+        }
 
         updateStatus(DeviceStatusListener.Status.CONNECTED);
     }
 
+    /**
+     * Load a contact snapshot, migrating it from a string set preference if needed.
+     * @param file snapshot file
+     * @param legacyKey preference key of the string set to hash, or null if there is none
+     * @return sorted snapshot
+     */
+    private long[] loadSnapshot(File file, @Nullable String legacyKey) {
+        try {
+            long[] snapshot = ContactSnapshot.read(file);
+            if (snapshot != null) {
+                return snapshot;
+            }
+        } catch (IOException ex) {
+            logger.warn("Failed to read contact snapshot {}, starting a new one", file, ex);
+            preferences.edit()
+                    .remove(CONTACT_CHECKPOINT)
+                    .apply();
+            return ContactSnapshot.EMPTY;
+        }
+        if (legacyKey == null) {
+            return ContactSnapshot.EMPTY;
+        }
+
+        Set<String> legacyValues = preferences.getStringSet(legacyKey, Collections.emptySet());
+        ContactSnapshot.Builder builder = new ContactSnapshot.Builder(legacyValues.size());
+        for (String value : legacyValues) {
+            builder.add(ContactSnapshot.hash(value));
+        }
+        long[] snapshot = builder.build();
+        if (storeSnapshot(file, snapshot)) {
+            preferences.edit()
+                    .remove(legacyKey)
+                    .apply();
+        }
+        return snapshot;
+    }
+
+    private boolean storeSnapshot(File file, long[] snapshot) {
+        try {
+            ContactSnapshot.write(file, snapshot);
+            return true;
+        } catch (IOException ex) {
+            logger.error("Failed to store contact snapshot {}", file, ex);
+            return false;
+        }
+    }
+
     @Override
     public void close() throws IOException {
+        synchronized (this) {
+            isStarted = false;
+            if (contactsObserver != null) {
+                contactsObserver.unregister(db);
+            }
+        }
+        WakeupCoordinator.Job job = checkJob;
+        if (job != null) {
+            job.unregister();
+            checkJob = null;
+        }
         processor.close();
         super.close();
     }
 
     @Override
     public void run() {
-        Set<String> newContactLookups = getContactLookups();
+        DebouncedContentObserver observer;
+        synchronized (this) {
+            observer = contactsObserver;
+        }
+        if (observer != null) {
+            int changes = observer.getChangeCount();
+            int scans = observer.getActionCount();
+            logger.info("Contacts changed {} times, scanned {} times after changes ({} scans avoided)",
+                    changes, scans, Math.max(changes - scans, 0));
+        }
+
+        if (isIncremental) {
+            updateContactIds();
+        } else {
+            updateContactLookups();
+        }
+    }
+
+    private void updateContactLookups() {
+        long[] newContactLookups = getContactLookups();
 
         if (newContactLookups == null || processor.isDone()) {
             return;
@@ -100,30 +219,21 @@ public class PhoneContactListManager extends AbstractDeviceManager<PhoneContacts
         Integer added = null;
         Integer removed = null;
 
-        if (!savedContactLookups.isEmpty()) {
-            added = differenceSize(newContactLookups, savedContactLookups);
-            removed = differenceSize(savedContactLookups, newContactLookups);
+        if (savedContactLookups.length > 0) {
+            added = ContactSnapshot.countMissing(newContactLookups, savedContactLookups);
+            removed = ContactSnapshot.countMissing(savedContactLookups, newContactLookups);
         }
 
         savedContactLookups = newContactLookups;
-        preferences.edit().putStringSet(CONTACT_LOOKUPS, savedContactLookups).apply();
+        storeSnapshot(lookupSnapshotFile, savedContactLookups);
 
         double timestamp = System.currentTimeMillis() / 1000.0;
-        send(contactsTopic, new PhoneContactList(timestamp, timestamp, added, removed, newContactLookups.size()));
-    }
-
-    private static int differenceSize(Collection<?> collectionA, Collection<?> collectionB) {
-        int diff = 0;
-        for (Object o : collectionA) {
-            if (!collectionB.contains(o)) {
-                diff++;
-            }
-        }
-        return diff;
+        send(contactsTopic, new PhoneContactList(timestamp, timestamp, added, removed, newContactLookups.length));
     }
 
-    private Set<String> getContactLookups() {
-        Set<String> contactIds = new HashSet<>();
+    /** Get the sorted hashes of the lookup keys of all contacts. */
+    private long[] getContactLookups() {
+        ContactSnapshot.Builder contactIds = new ContactSnapshot.Builder(savedContactLookups.length);
 
         int limit = 1000;
         String sortOrder = "lookup ASC LIMIT " + limit;
@@ -144,7 +254,7 @@ public class PhoneContactListManager extends AbstractDeviceManager<PhoneContacts
                 while (cursor.moveToNext()) {
                     numUpdates++;
                     lastLookup = cursor.getString(0);
-                    contactIds.add(lastLookup);
+                    contactIds.add(ContactSnapshot.hash(lastLookup));
                 }
             }
 
@@ -156,10 +266,169 @@ public class PhoneContactListManager extends AbstractDeviceManager<PhoneContacts
             }
         } while (numUpdates == limit && !processor.isDone());
 
-        return contactIds;
+        return contactIds.build();
+    }
+
+    /**
+     * Update the contact list with the contacts that were updated or deleted since the last
+     * checkpoint. If there is no valid checkpoint, all contacts are scanned. The checkpoint is
+     * the time that the scan started, so that it stays valid while the contacts do not change.
+     */
+    private void updateContactIds() {
+        long checkpoint = preferences.getLong(CONTACT_CHECKPOINT, -1L);
+        long newCheckpoint = System.currentTimeMillis();
+        long deletedHorizon = newCheckpoint
+                - ContactsContract.DeletedContacts.DAYS_KEPT_MILLISECONDS;
+
+        Integer added = null;
+        Integer removed = null;
+
+        if (checkpoint < deletedHorizon) {
+            logger.info("No valid contact list checkpoint, scanning all contacts");
+            ContactSnapshot.Builder newContactIds = new ContactSnapshot.Builder(savedContactIds.length);
+            if (!getUpdatedContactIds(-1L, newContactIds) || processor.isDone()) {
+                return;
+            }
+            long[] newSnapshot = newContactIds.build();
+            if (savedContactIds.length > 0) {
+                added = ContactSnapshot.countMissing(newSnapshot, savedContactIds);
+                removed = ContactSnapshot.countMissing(savedContactIds, newSnapshot);
+            }
+            savedContactIds = newSnapshot;
+        } else {
+            ContactSnapshot.Builder updatedContactIds = new ContactSnapshot.Builder(0);
+            ContactSnapshot.Builder deletedContactIds = new ContactSnapshot.Builder(0);
+            if (!getUpdatedContactIds(checkpoint, updatedContactIds)
+                    || !getDeletedContactIds(checkpoint, deletedContactIds)
+                    || processor.isDone()) {
+                return;
+            }
+
+            long[] updated = updatedContactIds.build();
+            long[] deleted = deletedContactIds.build();
+            if (savedContactIds.length > 0) {
+                added = ContactSnapshot.countMissing(updated, savedContactIds);
+                removed = deleted.length - ContactSnapshot.countMissing(deleted, savedContactIds);
+            }
+            savedContactIds = ContactSnapshot.update(savedContactIds, updated, deleted);
+        }
+
+        if (!storeSnapshot(idSnapshotFile, savedContactIds)) {
+            return;
+        }
+        preferences.edit()
+                .putLong(CONTACT_CHECKPOINT, newCheckpoint)
+                .apply();
+
+        double timestamp = System.currentTimeMillis() / 1000.0;
+        send(contactsTopic, new PhoneContactList(timestamp, timestamp, added, removed, savedContactIds.length));
+    }
+
+    /**
+     * Get the IDs of contacts updated since given time.
+     * @param since time in milliseconds, or -1 for all contacts
+     * @param contactIds builder to add contact IDs to
+     * @return whether the contacts could be queried
+     */
+    private boolean getUpdatedContactIds(long since, ContactSnapshot.Builder contactIds) {
+        String where = null;
+        String[] whereArgs = null;
+        if (since >= 0) {
+            where = ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " >= ?";
+            whereArgs = new String[] {Long.toString(since)};
+        }
+        try (Cursor cursor = db.query(ContactsContract.Contacts.CONTENT_URI, ID_COLUMNS,
+                where, whereArgs, null)) {
+            if (cursor == null) {
+                return false;
+            }
+            while (cursor.moveToNext() && !processor.isDone()) {
+                contactIds.add(cursor.getLong(0));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the IDs of contacts deleted since given time.
+     * @param since time in milliseconds
+     * @param contactIds builder to add contact IDs to
+     * @return whether the deleted contacts could be queried
+     */
+    private boolean getDeletedContactIds(long since, ContactSnapshot.Builder contactIds) {
+        try (Cursor cursor = db.query(ContactsContract.DeletedContacts.CONTENT_URI, DELETED_COLUMNS,
+                ContactsContract.DeletedContacts.CONTACT_DELETED_TIMESTAMP + " >= ?",
+                new String[] {Long.toString(since)}, null)) {
+            if (cursor == null) {
+                return false;
+            }
+            while (cursor.moveToNext() && !processor.isDone()) {
+                contactIds.add(cursor.getLong(0));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scan the contact list after contacts have stopped changing for a given delay. The regular
+     * check interval then serves as a fallback.
+     * @param delay delay after the last change, or negative to only scan at the check interval.
+     */
+    synchronized void setContactsObserverDelay(long delay, TimeUnit unit) {
+        long delayMillis = delay < 0 ? -1L : unit.toMillis(delay);
+        if (delayMillis == contactsObserverDelay) {
+            return;
+        }
+        contactsObserverDelay = delayMillis;
+
+        if (contactsObserver != null) {
+            contactsObserver.unregister(db);
+            contactsObserver = null;
+        }
+        if (delayMillis >= 0) {
+            contactsObserver = new DebouncedContentObserver(observerHandler, delayMillis,
+                    TimeUnit.MILLISECONDS, this::triggerCheck);
+            if (isStarted) {
+                contactsObserver.register(db, ContactsContract.Contacts.CONTENT_URI);
+            }
+            logger.info("Contact list: scanning changes after {} ms", delayMillis);
+        }
+    }
+
+    private void triggerCheck() {
+        WakeupCoordinator.Job job = checkJob;
+        if (job != null) {
+            job.trigger();
+        } else {
+            processor.trigger();
+        }
+    }
+
+    private void runFromProcessor() {
+        WakeupCoordinator.Job job = checkJob;
+        if (job != null) {
+            job.runFromProcessor();
+        } else {
+            run();
+        }
+    }
+
+    void setIncremental(boolean incremental) {
+        isIncremental = incremental;
     }
 
     void setCheckInterval(long checkInterval, TimeUnit unit) {
-        processor.setInterval(checkInterval, unit);
+        checkIntervalMillis = unit.toMillis(checkInterval);
+        processor.setInterval(fallbackInterval(checkIntervalMillis), TimeUnit.MILLISECONDS);
+        WakeupCoordinator.Job job = checkJob;
+        if (job != null) {
+            job.setInterval(checkIntervalMillis, wakeupSlackMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long fallbackInterval(long intervalMillis) {
+        return wakeupSlackMillis >= 0
+                ? intervalMillis * WakeupCoordinator.FALLBACK_INTERVAL_FACTOR
+                : intervalMillis;
     }
 }
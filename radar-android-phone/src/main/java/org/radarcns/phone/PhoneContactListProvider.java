@@ -29,12 +29,20 @@ import java.util.concurrent.TimeUnit;
 
 import static org.radarcns.phone.PhoneSensorProvider.DEVICE_MODEL;
 import static org.radarcns.phone.PhoneSensorProvider.DEVICE_PRODUCER;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_SECONDS;
 
 public class PhoneContactListProvider extends DeviceServiceProvider<BaseDeviceState> {
     private static final String PHONE_PREFIX = "org.radarcns.phone.";
     private static final String PHONE_CONTACTS_LIST_INTERVAL = "phone_contacts_list_interval_seconds";
     public static final String PHONE_CONTACTS_LIST_INTERVAL_KEY =  PHONE_PREFIX + PHONE_CONTACTS_LIST_INTERVAL;
     public static final long PHONE_CONTACTS_LIST_INTERVAL_DEFAULT = TimeUnit.DAYS.toSeconds(1);
+    private static final String PHONE_CONTACTS_LIST_INCREMENTAL = "phone_contacts_list_incremental";
+    public static final String PHONE_CONTACTS_LIST_INCREMENTAL_KEY = PHONE_PREFIX + PHONE_CONTACTS_LIST_INCREMENTAL;
+    private static final boolean PHONE_CONTACTS_LIST_INCREMENTAL_DEFAULT = false;
+    private static final String PHONE_CONTACTS_LIST_OBSERVER_DELAY = "phone_contacts_list_observer_delay_seconds";
+    public static final String PHONE_CONTACTS_LIST_OBSERVER_DELAY_KEY = PHONE_PREFIX + PHONE_CONTACTS_LIST_OBSERVER_DELAY;
+    private static final long PHONE_CONTACTS_LIST_OBSERVER_DELAY_DEFAULT = -1L;
 
     @Override
     public String getDescription() {
@@ -68,6 +76,12 @@ public class PhoneContactListProvider extends DeviceServiceProvider<BaseDeviceSt
         RadarConfiguration config = getConfig();
         bundle.putLong(PHONE_CONTACTS_LIST_INTERVAL_KEY, config.getLong(
                 PHONE_CONTACTS_LIST_INTERVAL, PHONE_CONTACTS_LIST_INTERVAL_DEFAULT));
+        bundle.putLong(PHONE_WAKEUP_SLACK_SECONDS, config.getLong(
+                PHONE_WAKEUP_SLACK_SECONDS, PHONE_WAKEUP_SLACK_DEFAULT_SECONDS));
+        bundle.putBoolean(PHONE_CONTACTS_LIST_INCREMENTAL_KEY, config.getBoolean(
+                PHONE_CONTACTS_LIST_INCREMENTAL, PHONE_CONTACTS_LIST_INCREMENTAL_DEFAULT));
+        bundle.putLong(PHONE_CONTACTS_LIST_OBSERVER_DELAY_KEY, config.getLong(
+                PHONE_CONTACTS_LIST_OBSERVER_DELAY, PHONE_CONTACTS_LIST_OBSERVER_DELAY_DEFAULT));
     }
 
     @NonNull
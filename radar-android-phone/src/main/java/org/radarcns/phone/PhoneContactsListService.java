@@ -25,10 +25,17 @@ import org.radarcns.android.device.DeviceService;
 import java.util.concurrent.TimeUnit;
 
 import static org.radarcns.phone.PhoneContactListProvider.PHONE_CONTACTS_LIST_INTERVAL_DEFAULT;
+import static org.radarcns.phone.PhoneContactListProvider.PHONE_CONTACTS_LIST_INCREMENTAL_KEY;
 import static org.radarcns.phone.PhoneContactListProvider.PHONE_CONTACTS_LIST_INTERVAL_KEY;
+import static org.radarcns.phone.PhoneContactListProvider.PHONE_CONTACTS_LIST_OBSERVER_DELAY_KEY;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_SECONDS;
 
 public class PhoneContactsListService extends DeviceService<BaseDeviceState> {
     private volatile long checkInterval = PHONE_CONTACTS_LIST_INTERVAL_DEFAULT;
+    private volatile boolean incremental = false;
+    private volatile long observerDelay = -1L;
+    private volatile long wakeupSlack = PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
 
     @Override
     protected PhoneContactListManager createDeviceManager() {
@@ -45,14 +52,32 @@ public class PhoneContactsListService extends DeviceService<BaseDeviceState> {
         return checkInterval;
     }
 
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    public long getObserverDelay() {
+        return observerDelay;
+    }
+
+    /** Seconds that a check may be early to share a wakeup, or negative if not coordinated. */
+    public long getWakeupSlack() {
+        return wakeupSlack;
+    }
+
     @Override
     protected void onInvocation(@NonNull Bundle bundle) {
         super.onInvocation(bundle);
         checkInterval = bundle.getLong(PHONE_CONTACTS_LIST_INTERVAL_KEY);
+        incremental = bundle.getBoolean(PHONE_CONTACTS_LIST_INCREMENTAL_KEY);
+        observerDelay = bundle.getLong(PHONE_CONTACTS_LIST_OBSERVER_DELAY_KEY);
+        wakeupSlack = bundle.getLong(PHONE_WAKEUP_SLACK_SECONDS);
 
         PhoneContactListManager manager = (PhoneContactListManager) getDeviceManager();
         if (manager != null) {
             manager.setCheckInterval(checkInterval, TimeUnit.SECONDS);
+            manager.setIncremental(incremental);
+            manager.setContactsObserverDelay(observerDelay, TimeUnit.SECONDS);
         }
     }
 
@@ -24,8 +24,7 @@ import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.os.Process;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import org.radarcns.android.device.AbstractDeviceManager;
@@ -45,14 +44,11 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, BaseDeviceState> implements LocationListener, BatteryLevelReceiver.BatteryLevelListener {
     private static final Logger logger = LoggerFactory.getLogger(PhoneLocationManager.class);
 
-    private static final int FREQUENCY_OFF = 1;
-    private static final int FREQUENCY_REDUCED = 2;
-    private static final int FREQUENCY_NORMAL = 3;
-
     // storage with keys
     private static final String LATITUDE_REFERENCE = "latitude.reference";
     private static final String LONGITUDE_REFERENCE = "longitude.reference";
@@ -68,29 +64,27 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
     private final AvroTopic<ObservationKey, PhoneRelativeLocation> locationTopic;
     private final LocationManager locationManager;
     private final BatteryLevelReceiver batteryLevelReceiver;
+    private final LocationFixFilter fixFilter;
     private BigDecimal latitudeReference;
     private BigDecimal longitudeReference;
     private double altitudeReference;
-    private final HandlerThread handlerThread;
-    private Handler handler;
-    private int frequency;
-    private float batteryLevelMinimum;
-    private float batteryLevelReduced;
-    private int gpsInterval;
-    private int gpsIntervalReduced;
-    private int networkInterval;
-    private int networkIntervalReduced;
+    private volatile WorkerPool.SerialQueue queue;
+    private volatile Handler handler;
+    private LocationUpdatePolicy policy;
     private boolean isStarted;
+    private long batchLatency;
+    private int batchSize;
+    private LocationBuffer batchBuffer;
+    private final Runnable flushBatchRunnable = () -> submit(this::flushBatch);
 
     public PhoneLocationManager(PhoneLocationService context) {
         super(context);
         this.locationTopic = createTopic("android_phone_relative_location", PhoneRelativeLocation.class);
 
         locationManager = (LocationManager) getService().getSystemService(Context.LOCATION_SERVICE);
-        this.handlerThread = new HandlerThread("PhoneLocation", Process.THREAD_PRIORITY_BACKGROUND);
 
         batteryLevelReceiver = new BatteryLevelReceiver(context, this);
-        this.frequency = FREQUENCY_OFF;
+        fixFilter = new LocationFixFilter();
 
         initializeReferences();
 
@@ -128,22 +122,45 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
 
     @Override
     public void start(@NonNull Set<String> set) {
-        this.handlerThread.start();
-        this.handler = new Handler(this.handlerThread.getLooper());
+        WorkerPool.SerialQueue localQueue = WorkerPool.newQueue("phone location");
+        // location updates are delivered on the looper shared by the plugin, and processed in
+        // order in the queue of this manager
+        this.handler = new Handler(localQueue.getCallbackLooper());
+        this.queue = localQueue;
 
         updateStatus(DeviceStatusListener.Status.READY);
 
-        handler.post(() -> {
+        localQueue.execute(() -> {
             batteryLevelReceiver.register();
             updateStatus(DeviceStatusListener.Status.CONNECTED);
             isStarted = true;
         });
     }
 
+    /** Run a task in the queue of this manager, if it is started. */
+    private void submit(Runnable runnable) {
+        WorkerPool.SerialQueue localQueue = queue;
+        if (localQueue != null) {
+            localQueue.execute(runnable);
+        }
+    }
+
     public void onLocationChanged(Location location) {
+        if (location != null) {
+            submit(() -> processLocation(location));
+        }
+    }
+
+    /** Process a location. This must be called from the queue of this manager. */
+    private void processLocation(Location location) {
         if (location == null) {
             return;
         }
+        if (!fixFilter.accept(location)) {
+            logger.debug("Skipping duplicate, inaccurate or outdated location from {}",
+                    location.getProvider());
+            return;
+        }
 
         double eventTimestamp = location.getTime() / 1000d;
         double timestamp = System.currentTimeMillis() / 1000d;
@@ -154,21 +171,72 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
         }
 
         // Coordinates in degrees from the first coordinate registered
-        Double latitude = normalizeFloating(getRelativeLatitude(location.getLatitude()));
-        Double longitude = normalizeFloating(getRelativeLongitude(location.getLongitude()));
-        Float altitude = normalizeFloating(location.hasAltitude() ? getRelativeAltitude(location.getAltitude()) : Float.NaN);
-        Float accuracy = normalizeFloating(location.hasAccuracy() ? location.getAccuracy() : Float.NaN);
-        Float speed = normalizeFloating(location.hasSpeed() ? location.getSpeed() : Float.NaN);
-        Float bearing = normalizeFloating(location.hasBearing() ? location.getBearing() : Float.NaN);
+        double latitude = getRelativeLatitude(location.getLatitude());
+        double longitude = getRelativeLongitude(location.getLongitude());
+        float altitude = location.hasAltitude() ? getRelativeAltitude(location.getAltitude()) : Float.NaN;
+        float accuracy = location.hasAccuracy() ? location.getAccuracy() : Float.NaN;
+        float speed = location.hasSpeed() ? location.getSpeed() : Float.NaN;
+        float bearing = location.hasBearing() ? location.getBearing() : Float.NaN;
+
+        long latency;
+        int size;
+        synchronized (this) {
+            latency = batchLatency;
+            size = batchSize;
+        }
+
+        if (latency <= 0 || size <= 1) {
+            flushBatch();
+            sendLocation(provider, eventTimestamp, timestamp, latitude, longitude,
+                    altitude, accuracy, speed, bearing);
+            return;
+        }
+
+        if (batchBuffer == null || batchBuffer.capacity() != size) {
+            flushBatch();
+            batchBuffer = new LocationBuffer(size);
+        }
+        if (batchBuffer.isEmpty()) {
+            Handler localHandler = handler;
+            if (localHandler != null) {
+                localHandler.postDelayed(flushBatchRunnable, latency * 1000L);
+            }
+        }
+        if (batchBuffer.add(provider, eventTimestamp, timestamp, latitude, longitude,
+                altitude, accuracy, speed, bearing)) {
+            flushBatch();
+        }
+    }
+
+    /** Send all buffered locations. This must be called from the queue of this manager. */
+    private void flushBatch() {
+        Handler localHandler = handler;
+        if (localHandler != null) {
+            localHandler.removeCallbacks(flushBatchRunnable);
+        }
+        if (batchBuffer != null && !batchBuffer.isEmpty()) {
+            batchBuffer.drain(this::sendLocation);
+        }
+    }
+
+    private void sendLocation(LocationProvider provider, double eventTimestamp, double timestamp,
+            double relativeLatitude, double relativeLongitude, float relativeAltitude,
+            float accuracy, float speed, float bearing) {
+        Double latitude = normalizeFloating(relativeLatitude);
+        Double longitude = normalizeFloating(relativeLongitude);
+        Float altitude = normalizeFloating(relativeAltitude);
+        Float normalizedAccuracy = normalizeFloating(accuracy);
+        Float normalizedSpeed = normalizeFloating(speed);
+        Float normalizedBearing = normalizeFloating(bearing);
 
         PhoneRelativeLocation value = new PhoneRelativeLocation(
                 eventTimestamp, timestamp, provider,
                 latitude, longitude,
-                altitude, accuracy, speed, bearing);
+                altitude, normalizedAccuracy, normalizedSpeed, normalizedBearing);
         send(locationTopic, value);
 
         logger.info("Location: {} {} {} {} {} {} {} {} {}", provider, eventTimestamp, latitude,
-                longitude, accuracy, altitude, speed, bearing, timestamp);
+                longitude, normalizedAccuracy, altitude, normalizedSpeed, normalizedBearing, timestamp);
     }
 
     public void onStatusChanged(String provider, int status, Bundle extras) {}
@@ -179,13 +247,15 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
 
     public synchronized void setLocationUpdateRate(final long periodGPS, final long periodNetwork) {
         //noinspection Convert2Lambda
-        handler.post(new Runnable() {
+        submit(new Runnable() {
              @SuppressLint("MissingPermission")
              @Override
              public void run() {
-                 if (!isStarted) {
+                 WorkerPool.SerialQueue localQueue = queue;
+                 if (!isStarted || localQueue == null) {
                      return;
                  }
+                 Looper looper = localQueue.getCallbackLooper();
 
                  // Remove updates, if any
                  locationManager.removeUpdates(PhoneLocationManager.this);
@@ -194,8 +264,8 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
                  if (periodGPS <= 0) {
                      logger.info("Location GPS gathering disabled in settings");
                  } else if (locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER)) {
-                     onLocationChanged(locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER));
-                     locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, periodGPS * 1000, 0, PhoneLocationManager.this);
+                     processLocation(locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER));
+                     locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, periodGPS * 1000, 0, PhoneLocationManager.this, looper);
                      logger.info("Location GPS listener activated and set to a period of {}", periodGPS);
                  } else {
                      logger.warn("Location GPS listener not found");
@@ -204,8 +274,8 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
                  if (periodNetwork <= 0) {
                      logger.info("Location network gathering disabled in settings");
                  } else if (locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)) {
-                     onLocationChanged(locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER));
-                     locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, periodNetwork * 1000, 0, PhoneLocationManager.this);
+                     processLocation(locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER));
+                     locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, periodNetwork * 1000, 0, PhoneLocationManager.this, looper);
                      logger.info("Location Network listener activated and set to a period of {}", periodNetwork);
                  } else {
                      logger.warn("Location Network listener not found");
@@ -304,39 +374,23 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
 
     @Override
     public void onBatteryLevelChanged(float level, boolean isPlugged) {
-        if (handler == null) {
+        if (queue == null) {
             return;
         }
 
         long useGpsInterval;
         long useNetworkInterval;
-        int newFrequency;
 
         synchronized (this) {
-            if (isPlugged || level >= batteryLevelReduced) {
-                newFrequency = FREQUENCY_NORMAL;
-            } else if (level >= batteryLevelMinimum) {
-                newFrequency = FREQUENCY_REDUCED;
-            } else {
-                newFrequency = FREQUENCY_OFF;
-            }
-
-            if (frequency == newFrequency) {
+            if (policy == null || !policy.update(level, isPlugged)) {
                 return;
             }
-            frequency = newFrequency;
-
-            if (frequency == FREQUENCY_NORMAL) {
-                useGpsInterval = gpsInterval;
-                useNetworkInterval = networkInterval;
-            } else {
-                useGpsInterval = gpsIntervalReduced;
-                useNetworkInterval = networkIntervalReduced;
-            }
+            useGpsInterval = policy.getGpsInterval();
+            useNetworkInterval = policy.getNetworkInterval();
         }
 
-        if (frequency == FREQUENCY_OFF) {
-            handler.post(() -> locationManager.removeUpdates(PhoneLocationManager.this));
+        if (useGpsInterval <= 0 && useNetworkInterval <= 0) {
+            submit(() -> locationManager.removeUpdates(PhoneLocationManager.this));
         } else {
             setLocationUpdateRate(useGpsInterval, useNetworkInterval);
         }
@@ -344,43 +398,58 @@ class PhoneLocationManager extends AbstractDeviceManager<PhoneLocationService, B
 
     @Override
     public void close() throws IOException {
-        if (handler != null) {
-            handler.post(() -> {
+        logger.info("Location fixes suppressed: {} duplicate, {} inaccurate, {} outdated",
+                fixFilter.getDuplicateCount(), fixFilter.getInaccurateCount(),
+                fixFilter.getOutdatedCount());
+        WorkerPool.SerialQueue localQueue = queue;
+        if (localQueue != null) {
+            localQueue.execute(() -> {
                 batteryLevelReceiver.unregister();
                 locationManager.removeUpdates(PhoneLocationManager.this);
+                flushBatch();
             });
-            handler = null;
-            handlerThread.quitSafely();
+            queue = null;
+            // send the last batch before the manager closes
+            localQueue.closeAndWait(WorkerPool.CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         }
 
         super.close();
     }
 
-    public synchronized void setBatteryLevels(float batteryLevelMinimum, float batteryLevelReduced) {
-        if (this.batteryLevelMinimum == batteryLevelMinimum
-                && this.batteryLevelReduced == batteryLevelReduced) {
+    /**
+     * Set the policy that determines location update intervals from the battery state. If an
+     * equal policy is already in use, this has no effect.
+     */
+    public synchronized void setPolicy(@NonNull LocationUpdatePolicy policy) {
+        if (policy.equals(this.policy)) {
             return;
         }
-        this.batteryLevelMinimum = batteryLevelMinimum;
-        this.batteryLevelReduced = batteryLevelReduced;
+        this.policy = policy;
         this.onBatteryLevelChanged(batteryLevelReceiver.getLevel(), batteryLevelReceiver.isPlugged());
     }
 
-    public synchronized void setIntervals(int gpsInterval, int gpsIntervalReduced, int networkInterval, int networkIntervalReduced) {
-        if (this.gpsInterval == gpsInterval
-                && this.gpsIntervalReduced == gpsIntervalReduced
-                && this.networkInterval == networkInterval
-                && this.networkIntervalReduced == networkIntervalReduced) {
-            return;
-        }
+    /**
+     * Set the quality requirements of location fixes.
+     * @param maximumAccuracy maximum accuracy radius in meters, non-positive to accept all.
+     * @param maximumAge maximum age of a fix in seconds, non-positive to accept all.
+     */
+    public void setFixRequirements(float maximumAccuracy, int maximumAge) {
+        fixFilter.configure(maximumAccuracy, maximumAge, TimeUnit.SECONDS);
+    }
 
-        this.gpsInterval = gpsInterval;
-        this.gpsIntervalReduced = gpsIntervalReduced;
-        this.networkInterval = networkInterval;
-        this.networkIntervalReduced = networkIntervalReduced;
+    /**
+     * Deliver locations in batches instead of one by one. Locations are sent when the batch is
+     * full or when the first location in the batch has waited for the given latency.
+     * @param latency maximum delay of a location in seconds, non-positive to disable batching.
+     * @param size maximum number of locations in a batch.
+     */
+    public synchronized void setBatching(int latency, int size) {
+        this.batchLatency = latency;
+        this.batchSize = size;
+    }
 
-        // reset intervals
-        this.frequency = -1;
-        this.onBatteryLevelChanged(batteryLevelReceiver.getLevel(), batteryLevelReceiver.isPlugged());
+    /** Number of location fixes that were suppressed because they were already sent. */
+    public long getDuplicateFixCount() {
+        return fixFilter.getDuplicateCount();
     }
 }
@@ -39,6 +39,12 @@ public class PhoneLocationProvider extends DeviceServiceProvider<BaseDeviceState
     private static final String PHONE_LOCATION_NETWORK_INTERVAL_REDUCED = "phone_location_network_interval_reduced";
     private static final String PHONE_LOCATION_BATTERY_LEVEL_REDUCED = "phone_location_battery_level_reduced";
     private static final String PHONE_LOCATION_BATTERY_LEVEL_MINIMUM = "phone_location_battery_level_minimum";
+    private static final String PHONE_LOCATION_BATTERY_CURVE = "phone_location_battery_curve";
+    private static final String PHONE_LOCATION_BATTERY_CURVE_HYSTERESIS = "phone_location_battery_curve_hysteresis";
+    private static final String PHONE_LOCATION_ACCURACY_MAXIMUM = "phone_location_accuracy_maximum";
+    private static final String PHONE_LOCATION_AGE_MAXIMUM = "phone_location_age_maximum";
+    private static final String PHONE_LOCATION_BATCH_LATENCY = "phone_location_batch_latency";
+    private static final String PHONE_LOCATION_BATCH_SIZE = "phone_location_batch_size";
 
     public static final String PREFIX = PhoneLocationProvider.class.getName() + '.';
     public static final String INTERVAL_GPS_KEY = PREFIX + PHONE_LOCATION_GPS_INTERVAL;
@@ -47,6 +53,12 @@ public class PhoneLocationProvider extends DeviceServiceProvider<BaseDeviceState
     public static final String INTERVAL_NETWORK_REDUCED_KEY = PREFIX + PHONE_LOCATION_NETWORK_INTERVAL_REDUCED;
     public static final String MINIMUM_BATTERY_LEVEL_KEY = PREFIX + PHONE_LOCATION_BATTERY_LEVEL_REDUCED;
     public static final String REDUCED_BATTERY_LEVEL_KEY = PREFIX + PHONE_LOCATION_BATTERY_LEVEL_MINIMUM;
+    public static final String BATTERY_CURVE_KEY = PREFIX + PHONE_LOCATION_BATTERY_CURVE;
+    public static final String BATTERY_CURVE_HYSTERESIS_KEY = PREFIX + PHONE_LOCATION_BATTERY_CURVE_HYSTERESIS;
+    public static final String MAXIMUM_ACCURACY_KEY = PREFIX + PHONE_LOCATION_ACCURACY_MAXIMUM;
+    public static final String MAXIMUM_AGE_KEY = PREFIX + PHONE_LOCATION_AGE_MAXIMUM;
+    public static final String BATCH_LATENCY_KEY = PREFIX + PHONE_LOCATION_BATCH_LATENCY;
+    public static final String BATCH_SIZE_KEY = PREFIX + PHONE_LOCATION_BATCH_SIZE;
 
     private static final int LOCATION_GPS_INTERVAL_DEFAULT = 15*60; // seconds
     private static final int LOCATION_GPS_INTERVAL_REDUCED_DEFAULT = 4 * LOCATION_GPS_INTERVAL_DEFAULT; // seconds
@@ -56,6 +68,15 @@ public class PhoneLocationProvider extends DeviceServiceProvider<BaseDeviceState
     private static final float MINIMUM_BATTERY_LEVEL_DEFAULT = 0.15f;
     private static final float REDUCED_BATTERY_LEVEL_DEFAULT = 0.3f;
 
+    private static final String BATTERY_CURVE_DEFAULT = ""; // use battery levels
+    private static final float BATTERY_CURVE_HYSTERESIS_DEFAULT = 0.05f;
+
+    private static final float MAXIMUM_ACCURACY_DEFAULT = 0f; // meters, accept all
+    private static final int MAXIMUM_AGE_DEFAULT = 0; // seconds, accept all
+
+    private static final int BATCH_LATENCY_DEFAULT = 0; // seconds, no batching
+    private static final int BATCH_SIZE_DEFAULT = 32;
+
     @Override
     public String getDescription() {
         return getRadarService().getString(R.string.phone_location_description);
@@ -82,6 +103,12 @@ public class PhoneLocationProvider extends DeviceServiceProvider<BaseDeviceState
         bundle.putInt(INTERVAL_NETWORK_REDUCED_KEY, config.getInt(PHONE_LOCATION_NETWORK_INTERVAL_REDUCED, LOCATION_NETWORK_INTERVAL_REDUCED_DEFAULT));
         bundle.putFloat(MINIMUM_BATTERY_LEVEL_KEY, config.getFloat(PHONE_LOCATION_BATTERY_LEVEL_REDUCED, REDUCED_BATTERY_LEVEL_DEFAULT));
         bundle.putFloat(REDUCED_BATTERY_LEVEL_KEY, config.getFloat(PHONE_LOCATION_BATTERY_LEVEL_MINIMUM, MINIMUM_BATTERY_LEVEL_DEFAULT));
+        bundle.putString(BATTERY_CURVE_KEY, config.getString(PHONE_LOCATION_BATTERY_CURVE, BATTERY_CURVE_DEFAULT));
+        bundle.putFloat(BATTERY_CURVE_HYSTERESIS_KEY, config.getFloat(PHONE_LOCATION_BATTERY_CURVE_HYSTERESIS, BATTERY_CURVE_HYSTERESIS_DEFAULT));
+        bundle.putFloat(MAXIMUM_ACCURACY_KEY, config.getFloat(PHONE_LOCATION_ACCURACY_MAXIMUM, MAXIMUM_ACCURACY_DEFAULT));
+        bundle.putInt(MAXIMUM_AGE_KEY, config.getInt(PHONE_LOCATION_AGE_MAXIMUM, MAXIMUM_AGE_DEFAULT));
+        bundle.putInt(BATCH_LATENCY_KEY, config.getInt(PHONE_LOCATION_BATCH_LATENCY, BATCH_LATENCY_DEFAULT));
+        bundle.putInt(BATCH_SIZE_KEY, config.getInt(PHONE_LOCATION_BATCH_SIZE, BATCH_SIZE_DEFAULT));
     }
 
     @NonNull
@@ -22,21 +22,37 @@ import android.support.annotation.NonNull;
 import org.radarcns.android.device.BaseDeviceState;
 import org.radarcns.android.device.DeviceManager;
 import org.radarcns.android.device.DeviceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import static org.radarcns.phone.PhoneLocationProvider.BATCH_LATENCY_KEY;
+import static org.radarcns.phone.PhoneLocationProvider.BATCH_SIZE_KEY;
+import static org.radarcns.phone.PhoneLocationProvider.BATTERY_CURVE_HYSTERESIS_KEY;
+import static org.radarcns.phone.PhoneLocationProvider.BATTERY_CURVE_KEY;
 import static org.radarcns.phone.PhoneLocationProvider.INTERVAL_GPS_KEY;
 import static org.radarcns.phone.PhoneLocationProvider.INTERVAL_GPS_REDUCED_KEY;
 import static org.radarcns.phone.PhoneLocationProvider.INTERVAL_NETWORK_KEY;
 import static org.radarcns.phone.PhoneLocationProvider.INTERVAL_NETWORK_REDUCED_KEY;
+import static org.radarcns.phone.PhoneLocationProvider.MAXIMUM_ACCURACY_KEY;
+import static org.radarcns.phone.PhoneLocationProvider.MAXIMUM_AGE_KEY;
 import static org.radarcns.phone.PhoneLocationProvider.MINIMUM_BATTERY_LEVEL_KEY;
 import static org.radarcns.phone.PhoneLocationProvider.REDUCED_BATTERY_LEVEL_KEY;
 
 public class PhoneLocationService extends DeviceService<BaseDeviceState> {
+    private static final Logger logger = LoggerFactory.getLogger(PhoneLocationService.class);
+
     private int gpsInterval;
     private int gpsIntervalReduced;
     private int networkInterval;
     private int networkIntervalReduced;
     private float batteryLevelMinimum;
     private float batteryLevelReduced;
+    private String batteryCurve;
+    private float batteryCurveHysteresis;
+    private float maximumAccuracy;
+    private int maximumAge;
+    private int batchLatency;
+    private int batchSize;
 
     @Override
     protected PhoneLocationManager createDeviceManager() {
@@ -52,8 +68,22 @@ public class PhoneLocationService extends DeviceService<BaseDeviceState> {
     }
 
     private void configureManager(PhoneLocationManager manager) {
-        manager.setBatteryLevels(batteryLevelMinimum, batteryLevelReduced);
-        manager.setIntervals(gpsInterval, gpsIntervalReduced, networkInterval, networkIntervalReduced);
+        manager.setFixRequirements(maximumAccuracy, maximumAge);
+        manager.setBatching(batchLatency, batchSize);
+        manager.setPolicy(createPolicy());
+    }
+
+    private LocationUpdatePolicy createPolicy() {
+        if (batteryCurve != null && !batteryCurve.trim().isEmpty()) {
+            try {
+                return BatteryCurvePolicy.parse(batteryCurve, batteryCurveHysteresis);
+            } catch (IllegalArgumentException ex) {
+                logger.error("Invalid location battery curve '{}', using battery thresholds instead",
+                        batteryCurve, ex);
+            }
+        }
+        return new BatteryThresholdPolicy(batteryLevelMinimum, batteryLevelReduced,
+                gpsInterval, gpsIntervalReduced, networkInterval, networkIntervalReduced);
     }
 
     @Override
@@ -65,6 +95,12 @@ public class PhoneLocationService extends DeviceService<BaseDeviceState> {
         networkIntervalReduced = bundle.getInt(INTERVAL_NETWORK_REDUCED_KEY);
         batteryLevelMinimum = bundle.getFloat(MINIMUM_BATTERY_LEVEL_KEY);
         batteryLevelReduced = bundle.getFloat(REDUCED_BATTERY_LEVEL_KEY);
+        batteryCurve = bundle.getString(BATTERY_CURVE_KEY);
+        batteryCurveHysteresis = bundle.getFloat(BATTERY_CURVE_HYSTERESIS_KEY);
+        maximumAccuracy = bundle.getFloat(MAXIMUM_ACCURACY_KEY);
+        maximumAge = bundle.getInt(MAXIMUM_AGE_KEY);
+        batchLatency = bundle.getInt(BATCH_LATENCY_KEY);
+        batchSize = bundle.getInt(BATCH_SIZE_KEY);
         DeviceManager manager = getDeviceManager();
         if (manager != null) {
             configureManager((PhoneLocationManager) getDeviceManager());
@@ -26,7 +26,6 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.BatteryManager;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.PowerManager;
 import android.support.annotation.NonNull;
 import android.util.SparseArray;
@@ -57,7 +56,6 @@ import static android.os.BatteryManager.BATTERY_STATUS_DISCHARGING;
 import static android.os.BatteryManager.BATTERY_STATUS_FULL;
 import static android.os.BatteryManager.BATTERY_STATUS_NOT_CHARGING;
 import static android.os.BatteryManager.BATTERY_STATUS_UNKNOWN;
-import static android.os.Process.THREAD_PRIORITY_BACKGROUND;
 import static org.radarcns.phone.PhoneSensorProvider.PHONE_SENSOR_INTERVAL_DEFAULT;
 
 class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, PhoneState> implements SensorEventListener {
@@ -102,14 +100,25 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
     private final AvroTopic<ObservationKey, PhoneBatteryLevel> batteryTopic;
     private final SparseIntArray sensorDelays;
 
-    private final HandlerThread mHandlerThread;
     private final SensorManager sensorManager;
     private final OfflineProcessor batteryProcessor;
+    private final long wakeupSlackMillis;
+    private volatile long batteryIntervalMillis;
+    private volatile WakeupCoordinator.Job batteryJob;
     private int lastStepCount = -1;
     private PowerManager.WakeLock wakeLock;
+    private volatile WorkerPool.SerialQueue queue;
     private Handler mHandler;
 
-    public PhoneSensorManager(PhoneSensorService context, int batteryInterval,
+    /**
+     * Create a manager.
+     * @param context service
+     * @param batteryInterval interval between battery level readings
+     * @param wakeupSlack how early a battery level reading may be to share a wakeup with other
+     *                    jobs, or negative to let it wake the device on its own
+     * @param batteryIntervalUnit unit of the battery interval and wakeup slack
+     */
+    public PhoneSensorManager(PhoneSensorService context, int batteryInterval, long wakeupSlack,
                               TimeUnit batteryIntervalUnit) {
         super(context);
 
@@ -121,12 +130,15 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
         magneticFieldTopic = createTopic("android_phone_magnetic_field", PhoneMagneticField.class);
 
         this.sensorDelays = new SparseIntArray();
-        mHandlerThread = new HandlerThread("Phone sensors", THREAD_PRIORITY_BACKGROUND);
-
-        batteryProcessor = new OfflineProcessor.Builder(context, this::processBatteryStatus)
+        wakeupSlackMillis = wakeupSlack >= 0 ? batteryIntervalUnit.toMillis(wakeupSlack) : -1L;
+        batteryIntervalMillis = batteryIntervalUnit.toMillis(batteryInterval);
+        // when coordinated, battery readings run in the shared wakeups and the battery processor
+        // only runs them as a fallback
+        boolean isCoordinated = wakeupSlackMillis >= 0;
+        batteryProcessor = new OfflineProcessor.Builder(context, this::runBatteryProcessor)
                 .requestIdentifier(REQUEST_CODE_PENDING_INTENT, ACTIVITY_LAUNCH_WAKE)
-                .interval(batteryInterval, batteryIntervalUnit)
-                .wake(true)
+                .interval(fallbackInterval(batteryIntervalMillis), TimeUnit.MILLISECONDS)
+                .wake(!isCoordinated)
                 .build();
 
         setName(android.os.Build.MODEL);
@@ -149,13 +161,25 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
             wakeLock.acquire();
         }
 
-        mHandlerThread.start();
-        mHandler = new Handler(mHandlerThread.getLooper());
+        synchronized (this) {
+            // sensor events are delivered on the looper shared by the plugin, and processed in
+            // order in the queue of this manager
+            queue = WorkerPool.newQueue("phone sensors");
+            mHandler = new Handler(queue.getCallbackLooper());
+        }
 
         registerSensors();
 
         batteryProcessor.start();
-        batteryProcessor.trigger();
+        if (wakeupSlackMillis >= 0) {
+            WakeupCoordinator.Job job = WakeupCoordinator.register(getService(), "battery level",
+                    batteryIntervalMillis, wakeupSlackMillis, TimeUnit.MILLISECONDS,
+                    this::processBatteryStatus, batteryProcessor);
+            batteryJob = job;
+            job.trigger();
+        } else {
+            batteryProcessor.trigger();
+        }
 
         updateStatus(DeviceStatusListener.Status.CONNECTED);
     }
@@ -176,7 +200,18 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
     }
 
     public final void setBatteryUpdateInterval(final long period, TimeUnit batteryIntervalUnit) {
-        batteryProcessor.setInterval(period, batteryIntervalUnit);
+        batteryIntervalMillis = batteryIntervalUnit.toMillis(period);
+        batteryProcessor.setInterval(fallbackInterval(batteryIntervalMillis), TimeUnit.MILLISECONDS);
+        WakeupCoordinator.Job job = batteryJob;
+        if (job != null) {
+            job.setInterval(batteryIntervalMillis, wakeupSlackMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long fallbackInterval(long intervalMillis) {
+        return wakeupSlackMillis >= 0
+                ? intervalMillis * WakeupCoordinator.FALLBACK_INTERVAL_FACTOR
+                : intervalMillis;
     }
 
     /**
@@ -202,26 +237,39 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
         }
     }
 
+    /** Run a task in the queue of this manager, if it is started. */
+    private void submit(Runnable runnable) {
+        WorkerPool.SerialQueue localQueue = queue;
+        if (localQueue != null) {
+            localQueue.execute(runnable);
+        }
+    }
+
     @Override
     public void onSensorChanged(SensorEvent event) {
-        switch (event.sensor.getType()) {
+        // the framework reuses the event after this call, so copy its values
+        final int type = event.sensor.getType();
+        final float[] values = event.values.clone();
+        final double time = System.currentTimeMillis() / 1_000d;
+
+        switch (type) {
             case Sensor.TYPE_ACCELEROMETER:
-                processAcceleration(event);
+                submit(() -> processAcceleration(values, time));
                 break;
             case Sensor.TYPE_LIGHT:
-                processLight(event);
+                submit(() -> processLight(values, time));
                 break;
             case Sensor.TYPE_GYROSCOPE:
-                processGyroscope(event);
+                submit(() -> processGyroscope(values, time));
                 break;
             case Sensor.TYPE_MAGNETIC_FIELD:
-                processMagneticField(event);
+                submit(() -> processMagneticField(values, time));
                 break;
             case Sensor.TYPE_STEP_COUNTER:
-                processStep(event);
+                submit(() -> processStep(values, time));
                 break;
             default:
-                logger.debug("Phone registered unknown sensor change: '{}'", event.sensor.getType());
+                logger.debug("Phone registered unknown sensor change: '{}'", type);
         }
     }
 
@@ -230,53 +278,44 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
         // no action
     }
 
-    private void processAcceleration(SensorEvent event) {
+    private void processAcceleration(float[] values, double time) {
         // x,y,z are in m/s2
-        float x = event.values[0] / SensorManager.GRAVITY_EARTH;
-        float y = event.values[1] / SensorManager.GRAVITY_EARTH;
-        float z = event.values[2] / SensorManager.GRAVITY_EARTH;
+        float x = values[0] / SensorManager.GRAVITY_EARTH;
+        float y = values[1] / SensorManager.GRAVITY_EARTH;
+        float z = values[2] / SensorManager.GRAVITY_EARTH;
         getState().setAcceleration(x, y, z);
-        
-        double time = System.currentTimeMillis() / 1_000d;
 
         send(accelerationTopic, new PhoneAcceleration(time, time, x, y, z));
     }
 
-    private void processLight(SensorEvent event) {
-        float lightValue = event.values[0];
-
-        double time = System.currentTimeMillis() / 1_000d;
+    private void processLight(float[] values, double time) {
+        float lightValue = values[0];
 
         send(lightTopic, new PhoneLight(time, time, lightValue));
     }
 
-    private void processGyroscope(SensorEvent event) {
+    private void processGyroscope(float[] values, double time) {
         // Not normalized axis of rotation in rad/s
-        float axisX = event.values[0];
-        float axisY = event.values[1];
-        float axisZ = event.values[2];
-
-        double time = System.currentTimeMillis() / 1_000d;
+        float axisX = values[0];
+        float axisY = values[1];
+        float axisZ = values[2];
 
         send(gyroscopeTopic, new PhoneGyroscope(time, time, axisX, axisY, axisZ));
     }
 
-    private void processMagneticField(SensorEvent event) {
+    private void processMagneticField(float[] values, double time) {
         // Magnetic field in microTesla
-        float axisX = event.values[0];
-        float axisY = event.values[1];
-        float axisZ = event.values[2];
-
-        double time = System.currentTimeMillis() / 1_000d;
+        float axisX = values[0];
+        float axisY = values[1];
+        float axisZ = values[2];
 
         send(magneticFieldTopic, new PhoneMagneticField(time, time, axisX, axisY, axisZ));
     }
 
-    private void processStep(SensorEvent event) {
+    /** Process a step count. This must be called from the queue of this manager. */
+    private void processStep(float[] values, double time) {
         // Number of step since listening or since reboot
-        int stepCount = (int) event.values[0];
-
-        double time = System.currentTimeMillis() / 1_000d;
+        int stepCount = (int) values[0];
 
         // Send how many steps have been taken since the last time this function was triggered
         // Note: normally processStep() is called for every new step and the stepsSinceLastUpdate is 1
@@ -292,6 +331,15 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
         logger.info("Steps taken: {}", stepsSinceLastUpdate);
     }
 
+    private void runBatteryProcessor() {
+        WakeupCoordinator.Job job = batteryJob;
+        if (job != null) {
+            job.runFromProcessor();
+        } else {
+            processBatteryStatus();
+        }
+    }
+
     private void processBatteryStatus() {
         if (batteryProcessor.isDone()) {
             return;
@@ -324,6 +372,11 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
 
     @Override
     public void close() throws IOException {
+        WakeupCoordinator.Job job = batteryJob;
+        if (job != null) {
+            job.unregister();
+            batteryJob = null;
+        }
         batteryProcessor.close();
         if (sensorManager != null) {
             sensorManager.unregisterListener(this);
@@ -331,10 +384,19 @@ class PhoneSensorManager extends AbstractDeviceManager<PhoneSensorService, Phone
         if (wakeLock != null) {
             wakeLock.release();
         }
+        WorkerPool.SerialQueue localQueue;
         synchronized (this) {
-            mHandler = null;
+            if (mHandler != null) {
+                mHandler.removeCallbacksAndMessages(null);
+                mHandler = null;
+            }
+            localQueue = queue;
+            queue = null;
+        }
+        if (localQueue != null) {
+            // process the sensor events that were already queued before closing
+            localQueue.closeAndWait(WorkerPool.CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         }
-        mHandlerThread.quitSafely();
         super.close();
     }
 }
@@ -35,6 +35,8 @@ public class PhoneSensorProvider extends DeviceServiceProvider<PhoneState> {
     static final String PHONE_SENSOR_ACCELERATION_INTERVAL = "phone_sensor_acceleration_interval";
     static final String PHONE_SENSOR_LIGHT_INTERVAL = "phone_sensor_light_interval";
     static final String PHONE_SENSOR_BATTERY_INTERVAL_SECONDS = "phone_sensor_battery_interval_seconds";
+    static final String PHONE_WAKEUP_SLACK_SECONDS = "phone_wakeup_slack_seconds";
+    static final long PHONE_WAKEUP_SLACK_DEFAULT_SECONDS = -1L;
     public static final String DEVICE_PRODUCER = "ANDROID";
     public static final String DEVICE_MODEL = "PHONE";
 
@@ -65,6 +67,7 @@ public class PhoneSensorProvider extends DeviceServiceProvider<PhoneState> {
         bundle.putInt(PHONE_SENSOR_ACCELERATION_INTERVAL, getConfig().getInt(PHONE_SENSOR_ACCELERATION_INTERVAL, defaultInterval));
         bundle.putInt(PHONE_SENSOR_LIGHT_INTERVAL, getConfig().getInt(PHONE_SENSOR_LIGHT_INTERVAL, defaultInterval));
         bundle.putInt(PHONE_SENSOR_BATTERY_INTERVAL_SECONDS, getConfig().getInt(PHONE_SENSOR_BATTERY_INTERVAL_SECONDS, PHONE_SENSOR_BATTERY_INTERVAL_DEFAULT_SECONDS));
+        bundle.putLong(PHONE_WAKEUP_SLACK_SECONDS, getConfig().getLong(PHONE_WAKEUP_SLACK_SECONDS, PHONE_WAKEUP_SLACK_DEFAULT_SECONDS));
     }
 
     @NonNull
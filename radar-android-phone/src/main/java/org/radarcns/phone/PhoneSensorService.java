@@ -33,6 +33,8 @@ import static org.radarcns.phone.PhoneSensorProvider.PHONE_SENSOR_LIGHT_INTERVAL
 import static org.radarcns.phone.PhoneSensorProvider.PHONE_SENSOR_MAGNETIC_FIELD_INTERVAL;
 import static org.radarcns.phone.PhoneSensorProvider.PHONE_SENSOR_STEP_COUNT_INTERVAL;
 import static org.radarcns.phone.PhoneSensorProvider.PHONE_SENSOR_BATTERY_INTERVAL_SECONDS;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
+import static org.radarcns.phone.PhoneSensorProvider.PHONE_WAKEUP_SLACK_SECONDS;
 
 /**
  * A service that manages the phone sensor manager and a TableDataHandler to send store the data of
@@ -43,6 +45,7 @@ public class PhoneSensorService extends DeviceService<PhoneState> {
 
     private SparseIntArray sensorDelays;
     private int batteryInterval;
+    private long wakeupSlack = PHONE_WAKEUP_SLACK_DEFAULT_SECONDS;
 
     @Override
     public void onCreate() {
@@ -54,7 +57,7 @@ public class PhoneSensorService extends DeviceService<PhoneState> {
     protected PhoneSensorManager createDeviceManager() {
         logger.info("Creating PhoneSensorManager");
         PhoneSensorManager manager = new PhoneSensorManager(this, batteryInterval,
-                TimeUnit.SECONDS);
+                wakeupSlack, TimeUnit.SECONDS);
         manager.setSensorDelays(sensorDelays);
         return manager;
     }
@@ -74,6 +77,7 @@ public class PhoneSensorService extends DeviceService<PhoneState> {
         sensorDelays.put(Sensor.TYPE_LIGHT, bundle.getInt(PHONE_SENSOR_LIGHT_INTERVAL));
         sensorDelays.put(Sensor.TYPE_STEP_COUNTER, bundle.getInt(PHONE_SENSOR_STEP_COUNT_INTERVAL));
         batteryInterval = bundle.getInt(PHONE_SENSOR_BATTERY_INTERVAL_SECONDS);
+        wakeupSlack = bundle.getLong(PHONE_WAKEUP_SLACK_SECONDS);
         PhoneSensorManager manager = (PhoneSensorManager) getDeviceManager();
         if (manager != null) {
             manager.setSensorDelays(sensorDelays);
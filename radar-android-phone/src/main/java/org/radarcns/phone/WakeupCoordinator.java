@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import org.radarcns.android.util.OfflineProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares a single wakeup alarm between the periodic jobs of this plugin. Each job has a deadline,
+ * one interval after it last ran, and the alarm is set to the earliest deadline. At each wakeup,
+ * every job whose deadline is within its slack is run, so jobs run at their deadline or up to
+ * their slack earlier, but not later than the alarm fires. Jobs run on the thread of the wakeup,
+ * while it keeps the device awake.
+ *
+ * <p>A wakeup is only saved when a job runs early in the wakeup of another job, so the savings
+ * depend on the slack relative to the job intervals. The device still wakes at least once per
+ * shortest job interval. Saved wakeups are logged after each wakeup.
+ *
+ * <p>Each job also has its own processor, which should not wake the device itself. It runs the
+ * job when the job is triggered explicitly, and as a fallback if the job is overdue by more than
+ * an interval.
+ */
+final class WakeupCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(WakeupCoordinator.class);
+
+    private static final int WAKEUP_REQUEST_CODE = 3248903;
+    private static final String ACTION_WAKEUP = "org.radarcns.phone.WakeupCoordinator.ACTION_WAKEUP";
+    /**
+     * Minimum time until the next wakeup. The alarm manager does not repeat alarms more often,
+     * so jobs with a deadline sooner than this are run early instead.
+     */
+    private static final long MIN_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    /** Factor by which the interval of a coordinated processor is extended, as a fallback. */
+    static final int FALLBACK_INTERVAL_FACTOR = 4;
+
+    private static WakeupCoordinator instance;
+
+    private final List<Job> jobs;
+    private final OfflineProcessor processor;
+    private long wakeupDelay;
+    private boolean isClosed;
+    private int wakeupCount;
+    private int jobRunCount;
+
+    private WakeupCoordinator(Context context) {
+        jobs = new ArrayList<>();
+        wakeupDelay = TimeUnit.HOURS.toMillis(1);
+        isClosed = false;
+        processor = new OfflineProcessor.Builder(context, this::wakeup)
+                .requestIdentifier(WAKEUP_REQUEST_CODE, ACTION_WAKEUP)
+                .interval(wakeupDelay, TimeUnit.MILLISECONDS)
+                .wake(true)
+                .build();
+    }
+
+    /**
+     * Register a periodic job with the shared coordinator, starting the coordinator if needed.
+     * The job is first run after one interval.
+     * @param context context to create the coordinator with
+     * @param name job name for logging
+     * @param interval job interval
+     * @param slack how much earlier than its deadline the job may be run to share a wakeup
+     * @param unit unit of the interval and slack
+     * @param action action that runs the job
+     * @param jobProcessor processor of the job, which calls {@link Job#runFromProcessor()}
+     * @return registered job
+     */
+    @NonNull
+    static Job register(@NonNull Context context, @NonNull String name, long interval,
+            long slack, @NonNull TimeUnit unit, @NonNull Runnable action,
+            @NonNull OfflineProcessor jobProcessor) {
+        synchronized (WakeupCoordinator.class) {
+            if (instance == null) {
+                instance = new WakeupCoordinator(context.getApplicationContext());
+            }
+            return instance.add(name, interval, slack, unit, action, jobProcessor);
+        }
+    }
+
+    private Job add(String name, long interval, long slack, TimeUnit unit, Runnable action,
+            OfflineProcessor jobProcessor) {
+        if (isClosed) {
+            throw new IllegalStateException("Cannot register jobs with a closed coordinator");
+        }
+        Job job = new Job(name, action, jobProcessor);
+        job.setInterval(interval, slack, unit);
+        jobs.add(job);
+        if (jobs.size() == 1) {
+            processor.start();
+        }
+        scheduleWakeup(SystemClock.elapsedRealtime());
+        logger.info("Coordinating wakeups of {}", name);
+        return job;
+    }
+
+    /** Unregister a job. When no jobs remain, the coordinator is closed. */
+    private void unregister(@NonNull Job job) {
+        synchronized (WakeupCoordinator.class) {
+            if (!jobs.remove(job)) {
+                return;
+            }
+            if (jobs.isEmpty()) {
+                isClosed = true;
+                processor.close();
+                if (instance == this) {
+                    instance = null;
+                }
+            } else {
+                scheduleWakeup(SystemClock.elapsedRealtime());
+            }
+        }
+    }
+
+    /** Set the next wakeup to the earliest job deadline. */
+    private void scheduleWakeup(long now) {
+        if (isClosed) {
+            return;
+        }
+        long nextDeadline = Long.MAX_VALUE;
+        for (Job job : jobs) {
+            nextDeadline = Math.min(nextDeadline, job.getDeadline());
+        }
+        long delay = Math.max(nextDeadline - now, MIN_DELAY_MILLIS);
+        if (delay != wakeupDelay) {
+            wakeupDelay = delay;
+            processor.setInterval(delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void wakeup() {
+        List<Job> dueJobs = new ArrayList<>();
+        synchronized (WakeupCoordinator.class) {
+            if (isClosed) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            for (Job job : jobs) {
+                // run jobs early rather than after their deadline
+                long earliestRun = job.getDeadline() - Math.max(job.slack, MIN_DELAY_MILLIS);
+                if (earliestRun <= now) {
+                    job.lastRun = now;
+                    dueJobs.add(job);
+                }
+            }
+            wakeupCount++;
+            jobRunCount += dueJobs.size();
+            scheduleWakeup(now);
+        }
+        // run jobs in this wakeup, so that the device is kept awake while they run
+        for (Job job : dueJobs) {
+            job.run();
+        }
+        logger.info("Wakeup ran {} jobs; {} wakeups saved in total", dueJobs.size(),
+                getSavedWakeups());
+    }
+
+    /**
+     * Number of wakeups saved compared to each job waking the device separately. This is negative
+     * if the coordinator woke the device more often than the jobs would have.
+     */
+    int getSavedWakeups() {
+        synchronized (WakeupCoordinator.class) {
+            return jobRunCount - wakeupCount;
+        }
+    }
+
+    /** Periodic job registered with the coordinator. */
+    final class Job {
+        private final String name;
+        private final Runnable action;
+        private final OfflineProcessor jobProcessor;
+        private long interval;
+        private long slack;
+        private long lastRun;
+        private boolean isRequested;
+
+        private Job(String name, Runnable action, OfflineProcessor jobProcessor) {
+            this.name = name;
+            this.action = action;
+            this.jobProcessor = jobProcessor;
+            this.lastRun = SystemClock.elapsedRealtime();
+            this.isRequested = false;
+        }
+
+        /** Time at which the job should run next. */
+        private long getDeadline() {
+            return lastRun + interval;
+        }
+
+        /**
+         * Update the job interval and slack. The deadline of the job moves with the interval,
+         * counting from the last run, so setting the same interval again does not postpone it.
+         */
+        void setInterval(long interval, long slack, @NonNull TimeUnit unit) {
+            long newInterval = unit.toMillis(interval);
+            long newSlack = Math.max(unit.toMillis(slack), 0L);
+            synchronized (WakeupCoordinator.class) {
+                if (newInterval == this.interval && newSlack == this.slack) {
+                    return;
+                }
+                this.interval = newInterval;
+                this.slack = newSlack;
+                if (jobs.contains(this)) {
+                    scheduleWakeup(SystemClock.elapsedRealtime());
+                }
+            }
+        }
+
+        /** Run the job as soon as possible on its own processor, outside the wakeup schedule. */
+        void trigger() {
+            synchronized (WakeupCoordinator.class) {
+                isRequested = true;
+            }
+            jobProcessor.trigger();
+        }
+
+        /**
+         * Run the job from its own processor. Periodic runs of the processor are skipped, unless
+         * the wakeups have not run the job for more than an interval.
+         */
+        void runFromProcessor() {
+            synchronized (WakeupCoordinator.class) {
+                long now = SystemClock.elapsedRealtime();
+                if (!isRequested && now < getDeadline() + interval) {
+                    return;
+                }
+                isRequested = false;
+                lastRun = now;
+                scheduleWakeup(now);
+            }
+            run();
+        }
+
+        private void run() {
+            // the wakeup and the processor of the job may both run it
+            synchronized (this) {
+                try {
+                    action.run();
+                } catch (RuntimeException ex) {
+                    logger.error("Failed to run {}", name, ex);
+                }
+            }
+        }
+
+        /** Unregister this job from the coordinator that it was registered with. */
+        void unregister() {
+            WakeupCoordinator.this.unregister(this);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
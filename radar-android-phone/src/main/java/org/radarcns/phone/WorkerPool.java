@@ -0,0 +1,277 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small thread pool shared by the managers of this plugin. Each manager submits work to its own
+ * serial queue, which runs one task at a time in submission order, so tasks of a manager never
+ * run concurrently and need no further synchronization between them. Idle pool threads are
+ * stopped.
+ *
+ * <p>Framework callbacks, such as sensor and location updates, need a looper. Those are delivered
+ * on a single looper thread shared by all queues. The pool is shut down when its last queue is
+ * closed.
+ */
+final class WorkerPool {
+    private static final Logger logger = LoggerFactory.getLogger(WorkerPool.class);
+
+    private static final int NUMBER_OF_THREADS = 2;
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+    /** Time that a manager waits for its pending tasks when it closes its queue. */
+    static final long CLOSE_TIMEOUT_SECONDS = 10L;
+
+    private static WorkerPool instance;
+
+    private final ThreadPoolExecutor executor;
+    private final HandlerThread callbackThread;
+    private int numberOfQueues;
+
+    private WorkerPool() {
+        executor = new ThreadPoolExecutor(NUMBER_OF_THREADS, NUMBER_OF_THREADS,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "PhoneWorker"));
+        executor.allowCoreThreadTimeOut(true);
+        callbackThread = new HandlerThread("PhoneCallbacks", Process.THREAD_PRIORITY_BACKGROUND);
+        callbackThread.start();
+        numberOfQueues = 0;
+    }
+
+    /**
+     * Create a serial queue, starting the shared pool if needed. Close the queue when it is no
+     * longer used.
+     * @param name queue name for logging
+     */
+    @NonNull
+    static SerialQueue newQueue(@NonNull String name) {
+        synchronized (WorkerPool.class) {
+            if (instance == null) {
+                instance = new WorkerPool();
+            }
+            instance.numberOfQueues++;
+            return instance.new SerialQueue(name);
+        }
+    }
+
+    private void release() {
+        synchronized (WorkerPool.class) {
+            numberOfQueues--;
+            if (numberOfQueues > 0) {
+                return;
+            }
+            executor.shutdown();
+            callbackThread.quitSafely();
+            if (instance == this) {
+                instance = null;
+            }
+        }
+        logger.info("Stopped shared worker pool");
+    }
+
+    /**
+     * Queue of tasks that run one at a time, in submission order, on the shared pool. It keeps
+     * track of how long tasks waited before running, and how much CPU time they used.
+     */
+    final class SerialQueue {
+        private final String name;
+        private final Queue<Task> tasks;
+        private boolean isRunning;
+        private boolean isClosed;
+        private int taskCount;
+        private long totalLatency;
+        private long maxLatency;
+        private long totalCpuTime;
+
+        private SerialQueue(String name) {
+            this.name = name;
+            this.tasks = new ArrayDeque<>();
+            this.isRunning = false;
+            this.isClosed = false;
+        }
+
+        /** Looper shared by all queues to receive framework callbacks on. */
+        @NonNull
+        Looper getCallbackLooper() {
+            return callbackThread.getLooper();
+        }
+
+        /**
+         * Run a task after all tasks submitted before it.
+         * @return whether the task was queued, false if the queue is closed
+         */
+        boolean execute(@NonNull Runnable runnable) {
+            synchronized (this) {
+                if (isClosed) {
+                    return false;
+                }
+                tasks.add(new Task(runnable, SystemClock.elapsedRealtime()));
+                if (isRunning) {
+                    return true;
+                }
+                isRunning = true;
+            }
+            executor.execute(this::runNext);
+            return true;
+        }
+
+        /**
+         * Run a single task. Another task of this queue is resubmitted to the pool afterwards,
+         * so that a busy queue does not keep other queues waiting.
+         */
+        private void runNext() {
+            Task task;
+            synchronized (this) {
+                task = tasks.poll();
+            }
+            if (task != null) {
+                long startTime = SystemClock.elapsedRealtime();
+                long startCpuTime = SystemClock.currentThreadTimeMillis();
+                try {
+                    task.runnable.run();
+                } catch (RuntimeException ex) {
+                    logger.error("Task in queue {} failed", name, ex);
+                }
+                long cpuTime = SystemClock.currentThreadTimeMillis() - startCpuTime;
+                synchronized (this) {
+                    long latency = startTime - task.submitTime;
+                    taskCount++;
+                    totalLatency += latency;
+                    maxLatency = Math.max(maxLatency, latency);
+                    totalCpuTime += cpuTime;
+                }
+            }
+
+            boolean hasNext;
+            boolean doRelease;
+            synchronized (this) {
+                hasNext = !tasks.isEmpty();
+                isRunning = hasNext;
+                doRelease = !hasNext && isClosed;
+                if (!hasNext) {
+                    notifyAll();
+                }
+            }
+            if (hasNext) {
+                executor.execute(this::runNext);
+            } else if (doRelease) {
+                logger.info("Closed {}", this);
+                release();
+            }
+        }
+
+        /**
+         * Close the queue. Tasks that were already submitted still run, after which the queue
+         * releases the shared pool. No new tasks are accepted.
+         */
+        void close() {
+            boolean doRelease;
+            synchronized (this) {
+                if (isClosed) {
+                    return;
+                }
+                isClosed = true;
+                doRelease = !isRunning;
+            }
+            if (doRelease) {
+                logger.info("Closed {}", this);
+                release();
+            }
+        }
+
+        /**
+         * Close the queue and wait for the tasks that were already submitted to run. This must
+         * not be called from a task of this queue.
+         * @return whether all tasks ran within the timeout
+         */
+        boolean closeAndWait(long timeout, @NonNull TimeUnit unit) {
+            close();
+            long deadline = SystemClock.elapsedRealtime() + unit.toMillis(timeout);
+            synchronized (this) {
+                while (isRunning) {
+                    long remaining = deadline - SystemClock.elapsedRealtime();
+                    if (remaining <= 0) {
+                        logger.warn("Tasks of queue {} did not finish within {} ms",
+                                name, unit.toMillis(timeout));
+                        return false;
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Number of tasks that have run. */
+        synchronized int getTaskCount() {
+            return taskCount;
+        }
+
+        /** Mean time in milliseconds that tasks waited between submission and running. */
+        synchronized long getMeanLatency() {
+            return taskCount > 0 ? totalLatency / taskCount : 0L;
+        }
+
+        /** Longest time in milliseconds that a task waited between submission and running. */
+        synchronized long getMaxLatency() {
+            return maxLatency;
+        }
+
+        /** Total CPU time in milliseconds used by tasks of this queue. */
+        synchronized long getCpuTime() {
+            return totalCpuTime;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(Locale.US,
+                    "queue %s: %d tasks, mean latency %d ms, max latency %d ms, CPU time %d ms",
+                    name, taskCount, getMeanLatency(), maxLatency, totalCpuTime);
+        }
+    }
+
+    private static class Task {
+        private final Runnable runnable;
+        private final long submitTime;
+
+        private Task(Runnable runnable, long submitTime) {
+            this.runnable = runnable;
+            this.submitTime = submitTime;
+        }
+    }
+}
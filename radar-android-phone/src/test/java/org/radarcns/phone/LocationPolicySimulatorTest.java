@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 The Hyve
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.radarcns.phone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays battery traces through location update policies and checks the predicted number of
+ * location fixes.
+ */
+public class LocationPolicySimulatorTest {
+    private static final double DELTA = 1e-6;
+    private static final String CURVE = "0.15:0:0,0.3:3600:1200,1:900:300";
+
+    /**
+     * Predict the number of location fixes for a battery trace. Each battery sample is assumed to
+     * hold until the next sample.
+     * @return the predicted number of GPS fixes at index 0 and of network fixes at index 1
+     */
+    private static double[] predictFixCounts(LocationUpdatePolicy policy, long[] times,
+            float[] levels, boolean[] plugged) {
+        double gpsFixes = 0d;
+        double networkFixes = 0d;
+
+        for (int i = 0; i < times.length - 1; i++) {
+            policy.update(levels[i], plugged[i]);
+            long duration = times[i + 1] - times[i];
+            long gpsInterval = policy.getGpsInterval();
+            if (gpsInterval > 0) {
+                gpsFixes += duration / (double) gpsInterval;
+            }
+            long networkInterval = policy.getNetworkInterval();
+            if (networkInterval > 0) {
+                networkFixes += duration / (double) networkInterval;
+            }
+        }
+        return new double[] {gpsFixes, networkFixes};
+    }
+
+    @Test
+    public void thresholdPolicy() {
+        LocationUpdatePolicy policy = new BatteryThresholdPolicy(0.15f, 0.3f,
+                3600L, 18000L, 600L, 3000L);
+        double[] fixes = predictFixCounts(policy,
+                new long[] {0L, 36000L, 72000L, 108000L, 144000L},
+                new float[] {1f, 0.25f, 0.1f, 0.1f, 0.1f},
+                new boolean[] {false, false, false, true, true});
+        // normal, reduced, off and plugged in for ten hours each
+        assertArrayEquals(new double[] {10 + 2 + 0 + 10, 60 + 12 + 0 + 60}, fixes, DELTA);
+    }
+
+    @Test
+    public void curvePolicy() {
+        LocationUpdatePolicy policy = BatteryCurvePolicy.parse(CURVE, 0.05f);
+        double[] fixes = predictFixCounts(policy,
+                new long[] {0L, 36000L, 72000L, 108000L},
+                new float[] {1f, 0.3f, 0.1f, 0.1f},
+                new boolean[] {false, false, false, false});
+        assertArrayEquals(new double[] {40 + 10 + 0, 120 + 30 + 0}, fixes, DELTA);
+    }
+
+    @Test
+    public void curvePolicyInterpolatesRate() {
+        LocationUpdatePolicy policy = BatteryCurvePolicy.parse(CURVE, 0.05f);
+        // halfway between 0.3 and 1, the rate is halfway between the rates of both points
+        double[] fixes = predictFixCounts(policy,
+                new long[] {0L, 14400L},
+                new float[] {0.65f, 0.65f},
+                new boolean[] {false, false});
+        assertArrayEquals(new double[] {10, 30}, fixes, DELTA);
+    }
+
+    @Test
+    public void curvePolicyPhasesInDisabledProvider() {
+        LocationUpdatePolicy policy = BatteryCurvePolicy.parse(CURVE, 0.05f);
+        // halfway between 0.15 and 0.3, the rate is half the rate at 0.3
+        double[] fixes = predictFixCounts(policy,
+                new long[] {0L, 7200L},
+                new float[] {0.225f, 0.225f},
+                new boolean[] {false, false});
+        assertArrayEquals(new double[] {1, 3}, fixes, DELTA);
+
+        // at the lowest point, location is off
+        policy = BatteryCurvePolicy.parse(CURVE, 0.05f);
+        fixes = predictFixCounts(policy,
+                new long[] {0L, 7200L},
+                new float[] {0.15f, 0.15f},
+                new boolean[] {false, false});
+        assertArrayEquals(new double[] {0, 0}, fixes, DELTA);
+    }
+
+    @Test
+    public void curvePolicyPluggedIn() {
+        LocationUpdatePolicy policy = BatteryCurvePolicy.parse(CURVE, 0.05f);
+        double[] fixes = predictFixCounts(policy,
+                new long[] {0L, 36000L},
+                new float[] {0.1f, 0.1f},
+                new boolean[] {true, true});
+        assertArrayEquals(new double[] {40, 120}, fixes, DELTA);
+    }
+
+    @Test
+    public void curvePolicyHysteresis() {
+        LocationUpdatePolicy policy = BatteryCurvePolicy.parse(CURVE, 0.05f);
+        assertTrue(policy.update(1f, false));
+        assertFalse(policy.update(0.98f, false));
+        double[] fixes = predictFixCounts(policy,
+                new long[] {0L, 36000L},
+                new float[] {0.97f, 0.97f},
+                new boolean[] {false, false});
+        // the small battery drop does not change the intervals set at full battery
+        assertArrayEquals(new double[] {40, 120}, fixes, DELTA);
+    }
+}